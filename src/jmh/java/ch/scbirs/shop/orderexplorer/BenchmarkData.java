@@ -0,0 +1,185 @@
+package ch.scbirs.shop.orderexplorer;
+
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generated shop data for the benchmarks, the same for every run
+ */
+public class BenchmarkData {
+
+    private static final String[] NAMES = {"Anna", "Beat", "Claudia", "Daniel", "Eva", "Fabian", "Gabriela", "Hans"};
+    private static final String[] PRODUCTS = {"T-Shirt", "Hoodie", "Cap", "Jacket", "Bag", "Sticker"};
+    private static final String[] SIZES = {"XS", "S", "M", "L", "XL"};
+    private static final String[] STATUS = {"processing", "on-hold", "completed"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @return orders with 1 to 4 products each, from 20 parent products with up to 5 variations
+     */
+    public static List<Order> orders(int count) {
+        Random random = new Random(count);
+        List<Order> orders = new ArrayList<>(count);
+        int productId = 0;
+        for (int i = 0; i < count; i++) {
+            Order.Builder b = new Order.Builder()
+                    .setId(100000 + i)
+                    .setFirstName(NAMES[random.nextInt(NAMES.length)])
+                    .setLastName(NAMES[random.nextInt(NAMES.length)] + "son")
+                    .setShippingFirstName(NAMES[random.nextInt(NAMES.length)])
+                    .setShippingLastName(NAMES[random.nextInt(NAMES.length)] + "son")
+                    .setEmail("customer" + i + "@example.com")
+                    .setStatus(STATUS[random.nextInt(STATUS.length)])
+                    .setTotal(String.valueOf(random.nextInt(300)) + ".00")
+                    .setNote(random.nextInt(5) == 0 ? "Please deliver\nafter 5pm, \"thanks\"" : "");
+            int products = 1 + random.nextInt(4);
+            for (int j = 0; j < products; j++) {
+                int parent = random.nextInt(20);
+                int variation = random.nextInt(6);
+                Map<String, String> meta = new HashMap<>();
+                if (variation > 0) {
+                    meta.put("size", SIZES[variation - 1]);
+                }
+                b.addProduct(new Product(productId++, 1 + random.nextInt(3), PRODUCTS[parent % PRODUCTS.length],
+                        meta, 20 + parent, "SKU-" + parent + "-" + variation, parent + 1,
+                        variation == 0 ? 0 : 1000 + parent * 10 + variation));
+            }
+            orders.add(b.build());
+        }
+        return orders;
+    }
+
+    /**
+     * @return orders with this many products (line items) in total
+     */
+    public static List<Order> ordersWithProducts(int products) {
+        List<Order> orders = new ArrayList<>();
+        int count = 0;
+        for (Order o : orders(products)) {
+            if (count >= products) {
+                break;
+            }
+            orders.add(o);
+            count += o.getProducts().size();
+        }
+        return orders;
+    }
+
+    /**
+     * @return the orders as the <code>orders</code> endpoint returns them, including the many fields that aren't read
+     */
+    public static byte[] orderPage(List<Order> orders) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator g = new JsonFactory().createGenerator(out)) {
+            g.writeStartArray();
+            for (Order o : orders) {
+                g.writeStartObject();
+                g.writeNumberField("id", o.getId());
+                g.writeNumberField("parent_id", 0);
+                g.writeStringField("number", String.valueOf(o.getId()));
+                g.writeStringField("order_key", "wc_order_5b0d" + o.getId());
+                g.writeStringField("created_via", "checkout");
+                g.writeStringField("version", "3.4.0");
+                g.writeStringField("status", o.getStatus());
+                g.writeStringField("currency", "CHF");
+                g.writeStringField("date_created", "2018-05-29T14:03:21");
+                g.writeStringField("date_modified", "2018-05-30T08:12:45");
+                g.writeStringField("discount_total", "0.00");
+                g.writeStringField("shipping_total", "7.00");
+                g.writeStringField("total", o.getTotal());
+                g.writeStringField("total_tax", "0.00");
+                g.writeBooleanField("prices_include_tax", true);
+                g.writeNumberField("customer_id", 0);
+                g.writeStringField("customer_ip_address", "192.0.2.1");
+                g.writeStringField("customer_user_agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64)");
+                g.writeStringField("customer_note", o.getNote());
+                g.writeObjectFieldStart("billing");
+                g.writeStringField("first_name", o.getFirstName());
+                g.writeStringField("last_name", o.getLastName());
+                g.writeStringField("company", "");
+                g.writeStringField("address_1", "Bahnhofstrasse 1");
+                g.writeStringField("city", "Bern");
+                g.writeStringField("postcode", "3000");
+                g.writeStringField("country", "CH");
+                g.writeStringField("email", o.getEmail());
+                g.writeStringField("phone", "031 000 00 00");
+                g.writeEndObject();
+                g.writeObjectFieldStart("shipping");
+                g.writeStringField("first_name", o.getShippingFirstName());
+                g.writeStringField("last_name", o.getShippingLastName());
+                g.writeStringField("address_1", "Bahnhofstrasse 1");
+                g.writeStringField("city", "Bern");
+                g.writeStringField("postcode", "3000");
+                g.writeStringField("country", "CH");
+                g.writeEndObject();
+                g.writeStringField("payment_method", "bacs");
+                g.writeStringField("payment_method_title", "Direct bank transfer");
+                g.writeArrayFieldStart("meta_data");
+                g.writeStartObject();
+                g.writeNumberField("id", 1);
+                g.writeStringField("key", "_shipping_method");
+                g.writeStringField("value", "flat_rate");
+                g.writeEndObject();
+                g.writeEndArray();
+                g.writeArrayFieldStart("line_items");
+                for (Product p : o.getProducts()) {
+                    g.writeStartObject();
+                    g.writeNumberField("id", p.getId());
+                    g.writeStringField("name", p.getName());
+                    g.writeNumberField("product_id", p.getProductId());
+                    g.writeNumberField("variation_id", p.getVariationId());
+                    g.writeNumberField("quantity", p.getQuantity());
+                    g.writeStringField("tax_class", "");
+                    g.writeStringField("subtotal", String.valueOf(p.getPrice()));
+                    g.writeStringField("total", String.valueOf(p.getPrice()));
+                    g.writeArrayFieldStart("taxes");
+                    g.writeEndArray();
+                    g.writeArrayFieldStart("meta_data");
+                    for (Map.Entry<String, String> e : p.getMeta().entrySet()) {
+                        g.writeStartObject();
+                        g.writeNumberField("id", 7);
+                        g.writeStringField("key", e.getKey());
+                        g.writeStringField("value", e.getValue());
+                        g.writeEndObject();
+                    }
+                    g.writeEndArray();
+                    g.writeStringField("sku", p.getSku());
+                    g.writeNumberField("price", p.getPrice());
+                    g.writeEndObject();
+                }
+                g.writeEndArray();
+                g.writeArrayFieldStart("shipping_lines");
+                g.writeStartObject();
+                g.writeStringField("method_title", "Flat rate");
+                g.writeStringField("total", "7.00");
+                g.writeEndObject();
+                g.writeEndArray();
+                g.writeObjectFieldStart("_links");
+                g.writeArrayFieldStart("self");
+                g.writeStartObject();
+                g.writeStringField("href", "https://shop.example.com/wp-json/wc/v2/orders/" + o.getId());
+                g.writeEndObject();
+                g.writeEndArray();
+                g.writeEndObject();
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
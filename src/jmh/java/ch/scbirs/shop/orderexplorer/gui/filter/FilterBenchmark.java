@@ -0,0 +1,79 @@
+package ch.scbirs.shop.orderexplorer.gui.filter;
+
+import ch.scbirs.shop.orderexplorer.BenchmarkData;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Toggling a filter on and off on 10k orders, against the old update that called contains and remove
+ * on the output list for every order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final Function<Order, Boolean> FILTER = o -> o.getId() % 3 != 0;
+
+    private List<Order> orders;
+    private Filter filter;
+
+    private ObservableList<Order> baselineOutput;
+    private Map<String, Function<Order, Boolean>> baselineFilters;
+
+    @Setup
+    public void setup() {
+        orders = BenchmarkData.orders(10_000);
+        filter = new Filter(orders);
+        baselineOutput = FXCollections.observableArrayList(orders);
+        baselineFilters = new HashMap<>();
+    }
+
+    @Benchmark
+    public List<Order> toggle() {
+        filter.toggleFilter("status", FILTER);
+        filter.toggleFilter("status", FILTER);
+        return filter.getFilteredOutput();
+    }
+
+    @Benchmark
+    public List<Order> baseline() {
+        baselineFilters.put("status", FILTER);
+        baselineUpdate();
+        baselineFilters.remove("status");
+        baselineUpdate();
+        return baselineOutput;
+    }
+
+    private void baselineUpdate() {
+        int index = 0;
+        for (Order o : orders) {
+            boolean include = true;
+            for (Function<Order, Boolean> f : baselineFilters.values()) {
+                include = f.apply(o);
+                if (!include) {
+                    break;
+                }
+            }
+            if (include) {
+                if (!baselineOutput.contains(o)) {
+                    baselineOutput.add(index, o);
+                }
+                index += 1;
+            } else {
+                baselineOutput.remove(o);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ch.scbirs.shop.orderexplorer.model;
+
+import ch.scbirs.shop.orderexplorer.BenchmarkData;
+import ch.scbirs.shop.orderexplorer.model.local.ProductData;
+import ch.scbirs.shop.orderexplorer.model.local.Status;
+import ch.scbirs.shop.orderexplorer.model.local.UserData;
+import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Toggling the status of a single product on 10k orders, against copying all collections as Data and
+ * UserData did before. Run with the gc profiler to see the allocation per toggle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataBenchmark {
+
+    private List<Product> products;
+    private Data data;
+    private Data baselineData;
+    private int next;
+
+    @Setup
+    public void setup() {
+        List<Order> orders = BenchmarkData.orders(10_000);
+        products = new ArrayList<>();
+        Map<Integer, ProductData> productData = new HashMap<>();
+        for (Order o : orders) {
+            for (Product p : o.getProducts()) {
+                products.add(p);
+                productData.put(p.getId(), new ProductData());
+            }
+        }
+        data = new Data(orders, Map.of(), List.of(), new UserData(productData, new UserSettings()));
+        baselineData = data;
+    }
+
+    private Product nextProduct() {
+        next = (next + 1) % products.size();
+        return products.get(next);
+    }
+
+    private static ProductData toggled(UserData userData, Product p) {
+        ProductData productData = userData.getProductData(p);
+        Status status = productData.getStatus();
+        return productData.withStatus(status.withPaid(!status.isPaid()));
+    }
+
+    @Benchmark
+    public Data toggle() {
+        Product p = nextProduct();
+        UserData userData = data.getUserData();
+        data = data.withUserData(userData.withProductData(p.getId(), toggled(userData, p)));
+        return data;
+    }
+
+    @Benchmark
+    public Data baseline() {
+        Product p = nextProduct();
+        UserData userData = baselineData.getUserData();
+        Map<Integer, ProductData> productData = new HashMap<>(userData.getProductData());
+        productData.put(p.getId(), toggled(userData, p));
+        baselineData = new Data(new ArrayList<>(baselineData.getOrders()), new HashMap<>(baselineData.getImages()),
+                new ArrayList<>(baselineData.getProductVariations()),
+                new UserData(productData, userData.getUserSettings()),
+                baselineData.getLastSync(), baselineData.getLastFullSync());
+        return baselineData;
+    }
+}
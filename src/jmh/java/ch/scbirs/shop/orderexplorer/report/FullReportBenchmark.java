@@ -0,0 +1,48 @@
+package ch.scbirs.shop.orderexplorer.report;
+
+import ch.scbirs.shop.orderexplorer.BenchmarkData;
+import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.UserData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving the full report of 200k line items. Measured as single shots, a report is generated once per click.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx512m")
+public class FullReportBenchmark {
+
+    private Data data;
+    private Path dir;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        data = new Data(BenchmarkData.ordersWithProducts(200_000), Collections.emptyMap(), Collections.emptyList(),
+                new UserData());
+        dir = Files.createTempDirectory("report");
+        file = dir.resolve("report.xlsx");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public Path save() throws IOException {
+        new FullReport(data).save(file);
+        return file;
+    }
+}
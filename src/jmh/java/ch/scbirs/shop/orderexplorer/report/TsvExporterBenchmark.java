@@ -0,0 +1,83 @@
+package ch.scbirs.shop.orderexplorer.report;
+
+import ch.scbirs.shop.orderexplorer.BenchmarkData;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Exporting 100k product lines as TSV, against the old export that joined all rows into one string
+ * and wrote it through an unbuffered writer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TsvExporterBenchmark {
+
+    private static final String[] HEADER = {"Order", "Name", "Note", "Product", "Quantity", "Price"};
+
+    private List<Order> orders;
+    private Path dir;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        orders = BenchmarkData.ordersWithProducts(100_000);
+        dir = Files.createTempDirectory("export");
+        file = dir.resolve("export.tsv");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public Path export() throws IOException {
+        try (Exporter exporter = new TsvExporter(file, HEADER)) {
+            for (Order o : orders) {
+                for (Product p : o.getProducts()) {
+                    exporter.cell(o.getId())
+                            .cell(o.getFirstName() + " " + o.getLastName())
+                            .cell(o.getNote())
+                            .cell(p.getName())
+                            .cell(p.getQuantity())
+                            .cell(p.getPrice())
+                            .endRow();
+                }
+            }
+        }
+        return file;
+    }
+
+    @Benchmark
+    public Path baseline() throws IOException {
+        String content = orders.stream()
+                .flatMap(o -> o.getProducts().stream().map(p -> String.join("\t",
+                        String.valueOf(o.getId()),
+                        o.getFirstName() + " " + o.getLastName(),
+                        o.getNote(),
+                        p.getName(),
+                        String.valueOf(p.getQuantity()),
+                        String.valueOf(p.getPrice()))))
+                .collect(Collectors.joining("\n", String.join("\t", Arrays.asList(HEADER)) + "\n", "\n"));
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file))) {
+            writer.write(content);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,39 @@
+package ch.scbirs.shop.orderexplorer.report.model;
+
+import ch.scbirs.shop.orderexplorer.BenchmarkData;
+import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.UserData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting the products of all orders. The time per operation grows linearly with the number of line items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductCountBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int lineItems;
+
+    private ProductCountFactory factory;
+
+    @Setup
+    public void setup() {
+        Data data = new Data(BenchmarkData.ordersWithProducts(lineItems), Collections.emptyMap(),
+                Collections.emptyList(), new UserData());
+        factory = new ProductCountFactory(data);
+    }
+
+    @Benchmark
+    public List<ProductCount> build() {
+        return factory.build();
+    }
+}
@@ -0,0 +1,53 @@
+package ch.scbirs.shop.orderexplorer.storage;
+
+import ch.scbirs.shop.orderexplorer.BenchmarkData;
+import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.UserData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the remote cache in both formats
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotFormatBenchmark {
+
+    @Param({"JSON", "SMILE"})
+    public SnapshotFormat format;
+
+    @Param({"10000", "100000"})
+    public int orders;
+
+    private Path base;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        Data data = new Data(BenchmarkData.orders(orders), Collections.emptyMap(), Collections.emptyList(),
+                new UserData());
+        base = Files.createTempFile("snapshot", "");
+        file = format.file(base);
+        format.write(file, RemoteCache.of(data));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(base);
+    }
+
+    @Benchmark
+    public RemoteCache read() throws IOException {
+        return format.read(file, RemoteCache.class);
+    }
+}
@@ -0,0 +1,78 @@
+package ch.scbirs.shop.orderexplorer.web;
+
+import ch.scbirs.shop.orderexplorer.BenchmarkData;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a page of 100 orders with the streaming {@link OrderDecoder} and with the tree
+ * ({@link ObjectMapper#readTree}) it replaced. Run with the gc profiler to compare the allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderDecoderBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private byte[] page;
+
+    @Setup
+    public void setup() {
+        page = BenchmarkData.orderPage(BenchmarkData.orders(100));
+    }
+
+    @Benchmark
+    public List<Order> streaming() throws IOException {
+        return new OrderDecoder().decode(new ByteArrayInputStream(page));
+    }
+
+    /**
+     * The decoding before the streaming decoder, reads the whole page into a tree first
+     */
+    @Benchmark
+    public List<Order> tree() throws IOException {
+        List<Order> orders = new ArrayList<>();
+        for (JsonNode order : mapper.readTree(new ByteArrayInputStream(page))) {
+            JsonNode billing = order.get("billing");
+            JsonNode shipping = order.get("shipping");
+
+            Order.Builder b = new Order.Builder()
+                    .setId(order.get("id").asInt())
+                    .setStatus(order.get("status").asText())
+                    .setNote(order.get("customer_note").asText())
+                    .setFirstName(billing.get("first_name").asText())
+                    .setLastName(billing.get("last_name").asText())
+                    .setShippingFirstName(shipping.get("first_name").asText())
+                    .setShippingLastName(shipping.get("last_name").asText())
+                    .setEmail(billing.get("email").asText())
+                    .setTotal(order.get("total").asText());
+
+            for (JsonNode product : order.get("line_items")) {
+                Map<String, String> meta = new HashMap<>();
+                for (JsonNode m : product.get("meta_data")) {
+                    meta.put(m.get("key").asText(), m.get("value").asText());
+                }
+                b.addProduct(new Product(product.get("id").asInt(), product.get("quantity").asInt(),
+                        product.get("name").asText(), meta, product.get("price").asDouble(),
+                        product.get("sku").asText(), product.get("product_id").asInt(),
+                        product.get("variation_id").asInt()));
+            }
+            orders.add(b.build());
+        }
+        return orders;
+    }
+}
@@ -1,5 +1,6 @@
 package ch.scbirs.shop.orderexplorer;
 
+import ch.scbirs.shop.orderexplorer.storage.SnapshotFormat;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
 import org.apache.logging.log4j.Logger;
 
@@ -11,6 +12,10 @@ public class Env {
     private static final Logger LOGGER = LogUtil.get();
     private static final Env INSTANCE = new Env();
     public final boolean debug;
+    /**
+     * Format of the remote cache file, json (default) or smile
+     */
+    public final SnapshotFormat snapshotFormat;
 
     public Env() {
         Properties p = new Properties();
@@ -20,6 +25,7 @@ public class Env {
             LOGGER.warn("Can't open DATA.env file");
         }
         debug = Boolean.parseBoolean(p.getProperty("debug"));
+        snapshotFormat = SnapshotFormat.parse(p.getProperty("snapshot"));
     }
 
     public static Env getInstance() {
@@ -11,7 +11,16 @@ import java.nio.file.Paths;
 public class OrderExplorer {
 
     public static final Path FOLDER = Paths.get("data");
+    /**
+     * All data in a single file, only read to migrate to the separate user data and remote cache files
+     */
     public static final Path SETTINGS_FILE = FOLDER.resolve("savefile.json");
+    public static final Path USER_DATA_FILE = FOLDER.resolve("userdata.json");
+    public static final Path JOURNAL_FILE = FOLDER.resolve("savefile.journal");
+    /**
+     * Remote cache file name without extension, see {@link ch.scbirs.shop.orderexplorer.storage.SnapshotFormat}
+     */
+    public static final Path REMOTE_CACHE_FILE = FOLDER.resolve("remote");
 
     public static void main(String[] args) throws IOException {
         Files.createDirectories(FOLDER);
@@ -2,36 +2,79 @@ package ch.scbirs.shop.orderexplorer.backup;
 
 import ch.scbirs.shop.orderexplorer.model.Data;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/**
+ * Writes backups on a background thread.
+ * <p>
+ * Requests made while an earlier request is still waiting are coalesced, only the newest data is written.
+ * A backup with the same content as the previous one is skipped.
+ * <p>
+ * A backup is a list of {@link ChunkStore} chunks, so data that didn't change between backups is stored
+ * only once, compressed. Backups written as full json files by older versions can still be loaded.
+ */
 public class BackupProvider {
     private static final Logger LOGGER = LogUtil.get();
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
     private static final int KEEP = 10;
     private static final String FOLDER = "backups";
-    private static final String FORMAT = "backup-%s.json";
-    private static final Pattern REGEX = Pattern.compile("backup-(.+)\\.json");
+    private static final String CHUNK_FOLDER = "chunks";
+    private static final String FORMAT = "backup-%s.chunks";
+    private static final String LEGACY_EXTENSION = ".json";
+    private static final Pattern REGEX = Pattern.compile("backup-(.+)\\.(json|chunks)");
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HH-mm-ss");
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("backup-writer").build());
+
     private static ObservableList<String> backups;
     private static Path root;
 
+    /**
+     * The newest requested backup, not yet taken by the writer
+     */
+    private static Data pending;
+    private static CompletableFuture<Void> pendingFuture;
+    /**
+     * Hash of the newest backup, only used by the writer thread
+     */
+    private static HashCode lastHash;
+
     public static void setRoot(Path root) {
         if (BackupProvider.root != null) {
             throw new IllegalStateException("Root path already set");
@@ -42,24 +85,101 @@ public class BackupProvider {
         } catch (IOException e) {
             LOGGER.error("Can't create backup folder");
         }
+        Runtime.getRuntime().addShutdownHook(new Thread(BackupProvider::shutdown, "backup-shutdown"));
     }
 
+    /**
+     * Waits for a running backup so it isn't cut off when the application exits
+     */
+    private static void shutdown() {
+        WRITER.shutdown();
+        try {
+            if (!WRITER.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Backup didn't finish before exit");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-    public static void nextBackup(Data data) throws IOException {
+    /**
+     * Requests a backup of the data, returns immediately
+     *
+     * @return completes once the data, or newer data requested in the meantime, is written to disk
+     */
+    public static synchronized CompletableFuture<Void> nextBackup(Data data) {
         if (data == null) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
-        Path folder = root.resolve(FOLDER);
+        if (pending == null) {
+            pendingFuture = new CompletableFuture<>();
+            WRITER.execute(BackupProvider::writePending);
+        }
+        pending = data;
+        return pendingFuture;
+    }
 
-        Files.createDirectories(folder);
+    private static void writePending() {
+        Data data;
+        CompletableFuture<Void> future;
+        synchronized (BackupProvider.class) {
+            data = pending;
+            future = pendingFuture;
+            pending = null;
+            pendingFuture = null;
+        }
+        try {
+            Path folder = root.resolve(FOLDER);
+            Files.createDirectories(folder);
 
-        newBackup(data, folder);
+            byte[] content = MAPPER.writeValueAsBytes(data);
+            HashCode hash = Hashing.sha256().hashBytes(content);
+            if (lastHash == null) {
+                lastHash = hashNewestBackup(folder);
+            }
+            if (hash.equals(lastHash)) {
+                LOGGER.info("Data unchanged since the last backup, skipping");
+            } else {
+                newBackup(content, folder);
+                lastHash = hash;
+                cleanupOldBackups(folder);
+            }
+            future.complete(null);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Can't make backup", e);
+            future.completeExceptionally(e);
+        }
+    }
 
-        cleanupOldBackups(folder);
+    private static HashCode hashNewestBackup(Path folder) throws IOException {
+        List<String> backups = listBackups(folder);
+        if (backups.isEmpty()) {
+            return null;
+        }
+        String newest = backups.stream().max(Comparator.comparing(BackupProvider::getDate)).get();
+        return Hashing.sha256().hashBytes(readBackup(folder, newest));
     }
 
     public static Data loadBackup(String name) throws IOException {
-        return Data.fromJsonFile(root.resolve(FOLDER).resolve(name));
+        return MAPPER.readValue(readBackup(root.resolve(FOLDER), name), Data.class);
+    }
+
+    private static byte[] readBackup(Path folder, String name) throws IOException {
+        if (name.endsWith(LEGACY_EXTENSION)) {
+            return Files.readAllBytes(folder.resolve(name));
+        }
+        return new ChunkStore(folder.resolve(CHUNK_FOLDER)).read(readManifest(folder.resolve(name)));
+    }
+
+    private static List<ChunkStore.Chunk> readManifest(Path file) throws IOException {
+        List<ChunkStore.Chunk> chunks = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                String[] parts = line.split(" ");
+                chunks.add(new ChunkStore.Chunk(parts[0], Integer.parseInt(parts[1])));
+            }
+        }
+        return chunks;
     }
 
     private static void cleanupOldBackups(Path folder) throws IOException {
@@ -73,16 +193,57 @@ public class BackupProvider {
             LOGGER.info("Deleting backup " + oldest);
 
             Files.delete(folder.resolve(oldest));
-            backups.remove(oldest);
+            Platform.runLater(() -> backups().remove(oldest));
         }
+
+        // Delete the chunks only used by deleted backups and report the space saved by sharing chunks
+        Set<String> used = new HashSet<>();
+        long dataSize = 0;
+        long diskSize = 0;
+        for (String name : quque) {
+            Path file = folder.resolve(name);
+            diskSize += Files.size(file);
+            if (name.endsWith(LEGACY_EXTENSION)) {
+                dataSize += Files.size(file);
+            } else {
+                for (ChunkStore.Chunk chunk : readManifest(file)) {
+                    used.add(chunk.getHash());
+                    dataSize += chunk.getLength();
+                }
+            }
+        }
+        ChunkStore chunks = new ChunkStore(folder.resolve(CHUNK_FOLDER));
+        chunks.retain(used);
+        diskSize += chunks.size();
+        LOGGER.info(String.format("%d backups of %d KiB use %d KiB on disk, %.0f%% saved",
+                quque.size(), dataSize / 1024, diskSize / 1024,
+                dataSize == 0 ? 0 : 100 - 100.0 * diskSize / dataSize));
     }
 
-    private static void newBackup(Data data, Path folder) throws IOException {
+    private static void newBackup(byte[] content, Path folder) throws IOException {
         String fileName = String.format(FORMAT, LocalDateTime.now().format(DATE_FORMATTER));
         Path file = folder.resolve(fileName);
+        Path tmp = folder.resolve(fileName + ".tmp");
         LOGGER.info("New Backup " + file);
-        Data.toJsonFile(file, data);
-        backups.add(fileName);
+
+        StringBuilder manifest = new StringBuilder();
+        for (ChunkStore.Chunk chunk : new ChunkStore(folder.resolve(CHUNK_FOLDER)).write(content)) {
+            manifest.append(chunk.getHash()).append(' ').append(chunk.getLength()).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(manifest.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Platform.runLater(() -> {
+            if (!backups().contains(fileName)) {
+                backups().add(fileName);
+            }
+        });
     }
 
     private static LocalDateTime getDate(String filename) {
@@ -102,6 +263,7 @@ public class BackupProvider {
     private static List<String> listBackups(Path folder) throws IOException {
         return Files.list(folder)
                 .map(p -> FilenameUtils.getName(p.toString()))
+                .filter(name -> REGEX.matcher(name).matches())
                 .collect(Collectors.toList());
     }
 
@@ -0,0 +1,194 @@
+package ch.scbirs.shop.orderexplorer.backup;
+
+import ch.scbirs.shop.orderexplorer.util.LogUtil;
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compressed, content addressed chunks shared by all backups.
+ * <p>
+ * Content is split at positions chosen by a rolling hash of the content itself, so an insertion
+ * only changes the chunks around it. Chunks that already exist, e.g. unchanged orders, aren't written again.
+ */
+class ChunkStore {
+
+    private static final Logger LOGGER = LogUtil.get();
+
+    private static final int MIN_CHUNK = 2 * 1024;
+    private static final int MAX_CHUNK = 64 * 1024;
+    /**
+     * Cut where the high 13 bits of the hash are zero, about every 8 KiB. Every byte shifts the hash left,
+     * so the high bits depend on the last 64 bytes, the low bits only on the last few.
+     */
+    private static final long MASK = 0xFFF8_0000_0000_0000L;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed, the chunk boundaries must be the same in every run
+        Random random = new Random(0x5eedL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final Path folder;
+
+    ChunkStore(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Stores the content
+     *
+     * @return the chunks making up the content
+     */
+    List<Chunk> write(byte[] content) throws IOException {
+        Files.createDirectories(folder);
+        List<Chunk> chunks = new ArrayList<>();
+        int written = 0;
+        int start = 0;
+        while (start < content.length) {
+            int end = cut(content, start);
+            String hash = Hashing.sha256().hashBytes(content, start, end - start).toString();
+            Path file = file(hash);
+            if (!Files.exists(file)) {
+                writeChunk(file, content, start, end - start);
+                written += 1;
+            }
+            chunks.add(new Chunk(hash, end - start));
+            start = end;
+        }
+        LOGGER.info("Stored " + chunks.size() + " chunks, " + written + " new");
+        return chunks;
+    }
+
+    private static int cut(byte[] content, int start) {
+        int max = Math.min(content.length, start + MAX_CHUNK);
+        long hash = 0;
+        for (int i = start + MIN_CHUNK; i < max; i++) {
+            hash = (hash << 1) + GEAR[content[i] & 0xff];
+            if ((hash & MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return max;
+    }
+
+    private void writeChunk(Path file, byte[] content, int offset, int length) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(channel))) {
+            out.write(content, offset, length);
+            out.finish();
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the content made up of the chunks
+     */
+    byte[] read(List<Chunk> chunks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Chunk chunk : chunks) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file(chunk.getHash())))) {
+                copy(in, out);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * Deletes all chunks that aren't in the given set
+     */
+    void retain(Set<String> hashes) throws IOException {
+        if (!Files.exists(folder)) {
+            return;
+        }
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                if (dot < 0) {
+                    // Not a chunk
+                    continue;
+                }
+                if (!hashes.contains(name.substring(0, dot))) {
+                    Files.delete(file);
+                    deleted += 1;
+                }
+            }
+        }
+        LOGGER.info("Deleted " + deleted + " unused chunks");
+    }
+
+    /**
+     * @return the size of all chunks on disk
+     */
+    long size() throws IOException {
+        if (!Files.exists(folder)) {
+            return 0;
+        }
+        long size = 0;
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    private Path file(String hash) {
+        return folder.resolve(hash + ".gz");
+    }
+
+    /**
+     * A chunk and its uncompressed length
+     */
+    static class Chunk {
+        private final String hash;
+        private final int length;
+
+        Chunk(String hash, int length) {
+            this.hash = hash;
+            this.length = length;
+        }
+
+        String getHash() {
+            return hash;
+        }
+
+        int getLength() {
+            return length;
+        }
+    }
+}
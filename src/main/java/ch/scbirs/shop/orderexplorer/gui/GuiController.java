@@ -1,5 +1,6 @@
 package ch.scbirs.shop.orderexplorer.gui;
 
+import ch.scbirs.shop.orderexplorer.Env;
 import ch.scbirs.shop.orderexplorer.OrderExplorer;
 import ch.scbirs.shop.orderexplorer.backup.BackupProvider;
 import ch.scbirs.shop.orderexplorer.gui.filter.*;
@@ -18,16 +19,23 @@ import ch.scbirs.shop.orderexplorer.model.local.UserDataCleaner;
 import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
 import ch.scbirs.shop.orderexplorer.model.remote.Order;
 import ch.scbirs.shop.orderexplorer.report.FullReport;
+import ch.scbirs.shop.orderexplorer.storage.DataStore;
+import ch.scbirs.shop.orderexplorer.storage.RemoteCache;
 import ch.scbirs.shop.orderexplorer.util.BindingUtil;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
 import ch.scbirs.shop.orderexplorer.version.GithubReleaseQuery;
 import ch.scbirs.shop.orderexplorer.version.VersionUtil;
 import ch.scbirs.shop.orderexplorer.web.CheckConnectionTask;
+import ch.scbirs.shop.orderexplorer.web.WebClient;
 import ch.scbirs.shop.orderexplorer.web.WebRequesterTask;
 import com.github.zafarkhaja.semver.Version;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import javafx.animation.PauseTransition;
 import javafx.application.HostServices;
 import javafx.application.Platform;
 import javafx.beans.binding.BooleanBinding;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
@@ -44,13 +52,21 @@ import javafx.scene.layout.AnchorPane;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class GuiController {
 
@@ -60,12 +76,41 @@ public class GuiController {
     private static final String HOTKEY_REPORT_OVERVIEW = "report.export.OverviewReport";
     private static final String HOTKEY_REPORT_FULL = "report.export.FullReport";
     private static final String HOTKEY_SAVE = "data.Save";
+    /**
+     * Wait this long after the last key stroke before searching
+     */
+    private static final Duration SEARCH_DELAY = Duration.millis(200);
+    private static final int EXIT_TIMEOUT_SECONDS = 30;
 
     private final DirtyObjectProperty<Data> data = new DirtyObjectProperty<>();
 
     private final BooleanBinding saved = data.dirtyProperty().not();
+    private final DataStore store = new DataStore(OrderExplorer.USER_DATA_FILE, OrderExplorer.JOURNAL_FILE,
+            OrderExplorer.REMOTE_CACHE_FILE, Env.getInstance().snapshotFormat, OrderExplorer.SETTINGS_FILE);
 
     private Filter filter;
+    /**
+     * Only used on the search thread, updated there before the searches for new orders
+     */
+    private final SearchIndex searchIndex = new SearchIndex(Collections.emptyList());
+    /**
+     * The search shown in the list, null if there is none
+     */
+    private final ObjectProperty<SearchFilter> shownSearch = new SimpleObjectProperty<>();
+
+    private final PauseTransition searchDelay = new PauseTransition(SEARCH_DELAY);
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("search-%d").build());
+    private Future<?> runningSearch;
+    /**
+     * Saves run one after the other on this thread, exiting waits for them
+     */
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("save-%d").build());
+    /**
+     * Incremented for every search, only the result of the latest search is shown
+     */
+    private int searchGeneration = 0;
 
     private Stage primaryStage;
     private OrderPanelController orderPanel;
@@ -90,17 +135,40 @@ public class GuiController {
     @SuppressWarnings("unused")
     private void onNewData(ObservableValue<? extends Data> o, Data oldData, Data data) {
         LOGGER.info("Data value has changed ");
-        int idx = list.getSelectionModel().getSelectedIndex();
-        if (idx < 0) {
-            idx = 0;
+        Order selected = list.getSelectionModel().getSelectedItem();
+        int idx = Math.max(0, list.getSelectionModel().getSelectedIndex());
+        boolean ordersChanged = oldData == null || data.getOrders() != oldData.getOrders();
+        if (ordersChanged) {
+            List<Order> orders = data.getOrders();
+            searchExecutor.execute(() -> searchIndex.update(orders));
         }
         if (filter == null) {
             filter = new Filter(data.getOrders());
         } else {
             filter = filter.clone(data.getOrders());
         }
-
         list.setItems(filter.getFilteredOutput());
+        select(selected, idx);
+
+        if (ordersChanged) {
+            // The search results don't include changes of the new orders yet
+            runSearch();
+        }
+    }
+
+    /**
+     * Selects the previously selected order again, or the row at the index if it isn't shown anymore
+     */
+    private void select(@Nullable Order previous, int idx) {
+        if (previous != null) {
+            List<Order> items = list.getItems();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).getId() == previous.getId()) {
+                    list.getSelectionModel().select(i);
+                    return;
+                }
+            }
+        }
         if (list.getItems().size() > idx) {
             list.getSelectionModel().select(idx);
         }
@@ -119,7 +187,10 @@ public class GuiController {
 
         ReportScreen.setResources(resources);
 
-        list.setCellFactory(param -> new OrderListCell(data));
+        list.setCellFactory(param -> new OrderListCell(data, shownSearch, resources));
+
+        searchDelay.setOnFinished(event -> runSearch());
+        search.textProperty().addListener((o, oldText, newText) -> searchDelay.playFromStart());
 
         list.getSelectionModel().selectedItemProperty().addListener((o, oldv, newv) -> orderPanel.setCurrentOrder(newv));
 
@@ -130,10 +201,12 @@ public class GuiController {
         orderPanel.setData(this.data);
         detailPane.getChildren().add(panel);
 
-        if (Files.exists(OrderExplorer.SETTINGS_FILE)) {
+        if (store.exists()) {
             try {
-                data.setValue(Data.fromJsonFile(OrderExplorer.SETTINGS_FILE));
+                // The orders follow once the remote cache is parsed
+                data.setValue(new Data().withUserData(store.loadUserData()));
                 data.resetDirty();
+                loadRemoteCache();
             } catch (Exception e) {
                 LOGGER.warn("Failed to open json file on startup", e);
             }
@@ -164,6 +237,39 @@ public class GuiController {
         versionCheck();
     }
 
+    private void loadRemoteCache() {
+        Data placeholder = data.get();
+        Task<RemoteCache> task = new Task<>() {
+            @Override
+            protected RemoteCache call() throws Exception {
+                return store.loadRemote();
+            }
+        };
+        RemoteCache empty = RemoteCache.of(placeholder);
+        task.setOnSucceeded(event -> {
+            // Keep the user data changed in the meantime, e.g. status toggles. Only a reload, an opened file
+            // or a new host replace the remote part, then the cache is outdated
+            Data current = data.get();
+            String host = current.getUserData().getUserSettings().getHost();
+            if (RemoteCache.of(current).sameAs(empty)
+                    && Objects.equals(host, placeholder.getUserData().getUserSettings().getHost())) {
+                boolean dirty = data.getDirty();
+                data.setValue(task.getValue().toData(current.getUserData()));
+                store.remoteApplied(task.getValue());
+                if (!dirty) {
+                    data.resetDirty();
+                }
+            } else {
+                LOGGER.info("Orders or host changed while the remote cache was loading, not applying it");
+            }
+        });
+        task.setOnFailed(event -> LOGGER.warn("Failed to load remote cache on startup", task.getException()));
+
+        Thread t = new Thread(task);
+        t.setDaemon(true);
+        t.start();
+    }
+
     private void versionCheck() {
         Version currversion = VersionUtil.getVersion();
 
@@ -172,7 +278,7 @@ public class GuiController {
             return;
         }
 
-        GithubReleaseQuery grq = new GithubReleaseQuery("Tiim", "woocommerce-order-explorer");
+        GithubReleaseQuery grq = new GithubReleaseQuery(WebClient.getDefault(), "Tiim", "woocommerce-order-explorer");
         grq.isNewerVersionAvailable(currversion).thenAccept(b -> Platform.runLater(() -> {
             if (b.getLeft()) {
                 AlertUtil.showInfo(String.format("New version %s available!", b.getRight().getVersion()), primaryStage);
@@ -188,8 +294,8 @@ public class GuiController {
 
     @FXML
     private void onOpen() throws IOException {
-        if (Files.exists(OrderExplorer.SETTINGS_FILE)) {
-            Data d = Data.fromJsonFile(OrderExplorer.SETTINGS_FILE);
+        if (store.exists()) {
+            Data d = store.load();
             data.setValue(d);
             data.resetDirty();
         } else {
@@ -198,15 +304,11 @@ public class GuiController {
     }
 
     @FXML
-    private void onSave() throws IOException {
+    private void onSave() {
         if (data.get() != null) {
-            try {
-                BackupProvider.nextBackup(data.get());
-            } catch (IOException e) {
-                LOGGER.warn("Can't make backup", e);
-            }
-            Data.toJsonFile(OrderExplorer.SETTINGS_FILE, data.get());
+            Data d = data.get();
             data.resetDirty();
+            saveInBackground(() -> store.save(d));
         } else {
             Alert alert = new Alert(Alert.AlertType.WARNING);
             alert.setHeaderText(resources.getString("app.dialog.save.NoData"));
@@ -220,9 +322,12 @@ public class GuiController {
         SettingsDialog sd = new SettingsDialog(old.getUserData().getUserSettings(), resources, primaryStage);
         Optional<UserSettings> newsettings = sd.showAndWait();
         if (newsettings.isPresent()) {
-            Data d = data.get().withUserData(data.get().getUserData().withUserSettings(newsettings.get()));
+            Data withSettings = data.get().withUserData(data.get().getUserData().withUserSettings(newsettings.get()));
+            // Orders of another shop can't be synced incrementally
+            Data d = newsettings.get().getHost().equals(old.getUserData().getUserSettings().getHost()) ?
+                    withSettings : withSettings.withSync(0, 0);
 
-            Task<Boolean> task = new CheckConnectionTask(newsettings.get());
+            Task<Boolean> task = new CheckConnectionTask(WebClient.create(newsettings.get()), newsettings.get());
             TaskAlert<Boolean> alert = new TaskAlert<>(task, resources.getString("app.dialog.conncheck.Title"),
                     resources.getString("app.dialog.conncheck.Header"), primaryStage);
 
@@ -247,7 +352,8 @@ public class GuiController {
             AlertUtil.showError(resources.getString("app.dialog.conncheck.NoSettings"), primaryStage);
             return;
         }
-        Task<Boolean> task = new CheckConnectionTask(data.get().getUserData().getUserSettings());
+        UserSettings settings = data.get().getUserData().getUserSettings();
+        Task<Boolean> task = new CheckConnectionTask(WebClient.create(settings), settings);
         TaskAlert<Boolean> alert = new TaskAlert<>(task, resources.getString("app.dialog.conncheck.Title"),
                 resources.getString("app.dialog.conncheck.Header"), primaryStage);
 
@@ -268,13 +374,7 @@ public class GuiController {
     @FXML
     private void onReload() {
 
-        if (data.get() != null) {
-            try {
-                BackupProvider.nextBackup(data.get());
-            } catch (IOException e) {
-                LOGGER.warn("Can't make backup", e);
-            }
-        }
+        BackupProvider.nextBackup(data.get());
 
         if (data.get().getUserData().getUserSettings().isEmpty()) {
             onSettingsDialog();
@@ -285,15 +385,17 @@ public class GuiController {
             return;
         }
 
-        Task<Data> task = new WebRequesterTask(data.get());
+        WebRequesterTask task = new WebRequesterTask(data.get());
 
         Alert alert = new TaskAlert<>(task, resources.getString("app.dialog.loading.Title"),
                 resources.getString("app.dialog.loading.Header"), primaryStage);
 
         task.setOnSucceeded(event -> {
             alert.close();
+            ThumbnailCache.invalidate(task.getReplacedImages());
             data.setValue(task.getValue());
-            ExceptionAlert.doTry(() -> Data.toJsonFile(OrderExplorer.SETTINGS_FILE, data.get()));
+            Data d = data.get();
+            saveInBackground(() -> store.saveSnapshot(d));
         });
 
         Thread th = new Thread(task);
@@ -306,12 +408,47 @@ public class GuiController {
     @FXML
     private void onBackup() {
         if (data.get() != null) {
-            ExceptionAlert.doTry(() -> BackupProvider.nextBackup(data.get()));
+            BackupProvider.nextBackup(data.get()).exceptionally(e -> {
+                Platform.runLater(() -> new ExceptionAlert(e).show());
+                return null;
+            });
         } else {
             AlertUtil.showWarning(resources.getString("app.dialog.backup.NoData"), primaryStage);
         }
     }
 
+    /**
+     * Runs the save on the save thread. If it fails the data is marked as unsaved again and the error is shown.
+     */
+    private void saveInBackground(ExceptionAlert.RunnableWithException save) {
+        saveExecutor.execute(() -> {
+            try {
+                save.run();
+            } catch (Exception e) {
+                LOGGER.warn("Failed to save", e);
+                Platform.runLater(() -> {
+                    data.dirtyProperty().set(true);
+                    new ExceptionAlert(e).show();
+                });
+            }
+        });
+    }
+
+    /**
+     * Waits for running saves and exits
+     */
+    private void exit() {
+        saveExecutor.shutdown();
+        try {
+            if (!saveExecutor.awaitTermination(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Saving didn't finish before exiting");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.exit(0);
+    }
+
     @FXML
     private void onExit() {
         if (!saved.get()) {
@@ -330,16 +467,16 @@ public class GuiController {
             Optional<ButtonType> btn = alert.showAndWait();
             if (btn.isPresent() && btn.get() == ButtonType.NO) {
                 LOGGER.info("Close without saving");
-                System.exit(0);
+                exit();
             } else if (btn.isPresent() && btn.get() == save) {
                 LOGGER.info("Close with saving");
-                ExceptionAlert.doTry(this::onSave);
-                System.exit(0);
+                onSave();
+                exit();
             }
             LOGGER.info("Abort closing");
         } else {
             LOGGER.info("Close - no save necessary");
-            System.exit(0);
+            exit();
         }
     }
 
@@ -349,13 +486,38 @@ public class GuiController {
         ad.show();
     }
 
-    @FXML
-    private void onSearch() {
+    /**
+     * Searches in the background. Older searches that are still running are cancelled,
+     * their results are discarded.
+     */
+    private void runSearch() {
+        searchDelay.stop();
+        int generation = ++searchGeneration;
+        if (runningSearch != null) {
+            runningSearch.cancel(true);
+            runningSearch = null;
+        }
+
         String s = search.getText().toLowerCase().trim();
         if (s.isEmpty()) {
             filter.removeFilter("search");
+            shownSearch.set(null);
+            list.refresh();
+            return;
         }
-        filter.addFilter("search", new SearchFilter(s));
+        runningSearch = searchExecutor.submit(() -> {
+            SearchFilter result = new SearchFilter(searchIndex, s);
+            Platform.runLater(() -> {
+                if (generation == searchGeneration) {
+                    Order selected = list.getSelectionModel().getSelectedItem();
+                    int idx = Math.max(0, list.getSelectionModel().getSelectedIndex());
+                    filter.addFilter("search", result, result.getRanking());
+                    shownSearch.set(result);
+                    list.refresh();
+                    select(selected, idx);
+                }
+            });
+        });
     }
 
     public void setHostServices(HostServices hostServices) {
@@ -385,7 +547,8 @@ public class GuiController {
     private void generateReportFull() {
         FileChooser chooser = new FileChooser();
         chooser.setTitle(resources.getString("app.dialog.report.full.filechooser.Title"));
-        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Excel File", "*.xls"));
+        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Excel File", "*.xlsx"),
+                new FileChooser.ExtensionFilter("Excel 97 File", "*.xls"));
         File selectedFile = chooser.showSaveDialog(primaryStage);
         if (selectedFile != null) {
             ExceptionAlert.doTry(() -> new FullReport(data.get()).save(selectedFile.toPath()));
@@ -1,23 +1,37 @@
 package ch.scbirs.shop.orderexplorer.gui;
 
 import ch.scbirs.shop.orderexplorer.Env;
+import ch.scbirs.shop.orderexplorer.gui.filter.SearchFilter;
+import ch.scbirs.shop.orderexplorer.gui.filter.SearchIndex;
 import ch.scbirs.shop.orderexplorer.model.Data;
 import ch.scbirs.shop.orderexplorer.model.remote.Order;
 import ch.scbirs.shop.orderexplorer.util.DataUtil;
 import javafx.beans.property.ObjectProperty;
+import javafx.css.PseudoClass;
 import javafx.scene.control.ListCell;
 
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.StringJoiner;
+
 public class OrderListCell extends ListCell<Order> {
 
+    private static final PseudoClass NAME_MATCH = PseudoClass.getPseudoClass("search_name");
+
     private final ObjectProperty<Data> data;
+    private final ObjectProperty<SearchFilter> search;
+    private final ResourceBundle resources;
 
-    public OrderListCell(ObjectProperty<Data> data) {
+    public OrderListCell(ObjectProperty<Data> data, ObjectProperty<SearchFilter> search, ResourceBundle resources) {
         this.data = data;
+        this.search = search;
+        this.resources = resources;
     }
 
     @Override
     protected void updateItem(Order item, boolean empty) {
         super.updateItem(item, empty);
+        boolean nameMatch = false;
         if (empty) {
             setText("");
         } else {
@@ -26,8 +40,22 @@ public class OrderListCell extends ListCell<Order> {
             if (Env.getInstance().debug) {
                 string += " (ID: " + item.getId() + ")";
             }
+            SearchFilter s = search.get();
+            if (s != null) {
+                Set<SearchIndex.Field> fields = s.getMatchedFields(item);
+                nameMatch = fields.contains(SearchIndex.Field.NAME);
+                // The name is highlighted, other fields aren't shown and are listed instead
+                StringJoiner other = new StringJoiner(", ", " (", ")").setEmptyValue("");
+                for (SearchIndex.Field f : fields) {
+                    if (f != SearchIndex.Field.NAME) {
+                        other.add(resources.getString("app.orders.search.field." + f.name()));
+                    }
+                }
+                string += other;
+            }
             setText(string);
         }
+        pseudoClassStateChanged(NAME_MATCH, nameMatch);
         DataUtil.OrderStatus s = DataUtil.getOrderStatus(item, data.get());
         DataUtil.setPseudoClass(this, s);
     }
@@ -22,8 +22,6 @@ import javafx.scene.input.*;
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nonnull;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.ResourceBundle;
 
 public class OrderPanelController {
@@ -102,12 +100,9 @@ public class OrderPanelController {
         );
 
 
-        Map<Integer, ProductData> newProductDataMap = new HashMap<>(oldUserData.getProductData());
+        UserData newUserData = oldUserData;
         for (Product p : currentOrder.getProducts()) {
-            ProductData productData = newProductDataMap.get(p.getId());
-            if (productData == null) {
-                productData = new ProductData();
-            }
+            ProductData productData = oldUserData.getProductData(p);
             Status oldStatus = productData.getStatus();
 
             if (!newStatus.isPaidIndetermiate()) {
@@ -120,10 +115,10 @@ public class OrderPanelController {
                 oldStatus = oldStatus.withDone(newStatus.isDone());
             }
 
-            newProductDataMap.put(p.getId(), productData.withStatus(oldStatus));
+            newUserData = newUserData.withProductData(p.getId(), productData.withStatus(oldStatus));
         }
 
-        Data d = oldData.withUserData(oldData.getUserData().withProductData(newProductDataMap));
+        Data d = oldData.withUserData(newUserData);
         data.set(d);
 
         updateStatus(DataUtil.getOrderStatus(currentOrder, d));
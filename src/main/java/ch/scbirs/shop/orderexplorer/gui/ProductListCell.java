@@ -1,12 +1,10 @@
 package ch.scbirs.shop.orderexplorer.gui;
 
 import ch.scbirs.shop.orderexplorer.Env;
-import ch.scbirs.shop.orderexplorer.OrderExplorer;
 import ch.scbirs.shop.orderexplorer.model.Data;
 import ch.scbirs.shop.orderexplorer.model.local.ProductData;
 import ch.scbirs.shop.orderexplorer.model.local.Status;
 import ch.scbirs.shop.orderexplorer.model.local.UserData;
-import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
 import ch.scbirs.shop.orderexplorer.model.remote.Product;
 import ch.scbirs.shop.orderexplorer.util.DataUtil;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
@@ -24,9 +22,8 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -59,6 +56,11 @@ public class ProductListCell extends ListCell<Product> {
     @FXML
     private CheckBox isDone;
     private final ChangeListener<Boolean> changedListener = this::changed;
+    private final ChangeListener<Number> imageProgressListener = this::imageProgress;
+    /**
+     * Thumbnail that is still loading in the background and will be shown once loaded
+     */
+    private Image loadingImage;
 
     public ProductListCell(ObjectProperty<Data> data) {
         this.data = data;
@@ -75,6 +77,7 @@ public class ProductListCell extends ListCell<Product> {
         currentItem = item;
 
         if (empty || item == null) {
+            stopLoadingImage();
             setGraphic(null);
             DataUtil.setPseudoClass(this, (Status) null);
         } else {
@@ -88,14 +91,7 @@ public class ProductListCell extends ListCell<Product> {
                     throw new RuntimeException(e);
                 }
             }
-            Path imgPath = OrderExplorer.FOLDER.resolve(data.get().getImage(item));
-
-            try {
-                Image value = new Image(Files.newInputStream(imgPath), 200, 200, true, true);
-                img.setImage(value);
-            } catch (IOException e) {
-                LOGGER.warn("Can't read image");
-            }
+            showImage(data.get().getImage(item));
             name.setText(item.getName());
             price.setText("CHF " + String.valueOf(item.getPrice()));
             quantity.setText(String.valueOf(item.getQuantity()) + "x");
@@ -121,6 +117,48 @@ public class ProductListCell extends ListCell<Product> {
 
     }
 
+    private void showImage(@Nullable String filename) {
+        stopLoadingImage();
+        if (filename == null) {
+            img.setImage(ThumbnailCache.getPlaceholder());
+            return;
+        }
+
+        Image image = ThumbnailCache.get(filename);
+        if (image.getProgress() >= 1) {
+            showLoadedImage(image);
+        } else {
+            img.setImage(ThumbnailCache.getPlaceholder());
+            loadingImage = image;
+            image.progressProperty().addListener(imageProgressListener);
+        }
+    }
+
+    private void showLoadedImage(Image image) {
+        if (image.isError()) {
+            LOGGER.warn("Can't read image", image.getException());
+            img.setImage(ThumbnailCache.getPlaceholder());
+        } else {
+            img.setImage(image);
+        }
+    }
+
+    private void stopLoadingImage() {
+        if (loadingImage != null) {
+            loadingImage.progressProperty().removeListener(imageProgressListener);
+            loadingImage = null;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private void imageProgress(ObservableValue<? extends Number> o, Number old, Number n) {
+        if (n.doubleValue() >= 1 && loadingImage != null) {
+            Image image = loadingImage;
+            stopLoadingImage();
+            showLoadedImage(image);
+        }
+    }
+
     private void updateStatus(Status status) {
 
         isPaid.selectedProperty().removeListener(changedListener);
@@ -140,8 +178,6 @@ public class ProductListCell extends ListCell<Product> {
     private void changed(ObservableValue<? extends Boolean> o, Boolean old, Boolean n) {
         Data oldData = this.data.get();
         UserData oldUserData = oldData.getUserData();
-        UserSettings settings = oldUserData.getUserSettings();
-        Map<Integer, ProductData> oldProductDataMap = oldUserData.getProductData();
 
         Status status = new Status(isInStock.isSelected(), isPaid.isSelected(), isDone.isSelected());
         ProductData newProductData = new ProductData(
@@ -150,12 +186,7 @@ public class ProductListCell extends ListCell<Product> {
 
         updateStatus(status);
 
-        Map<Integer, ProductData> newProductDataMap = new HashMap<>(oldProductDataMap);
-        newProductDataMap.put(currentItem.getId(), newProductData);
-
-
-        UserData ud = new UserData(newProductDataMap, settings);
-        Data d = oldData.withUserData(oldData.getUserData().withProductData(newProductDataMap));
+        Data d = oldData.withUserData(oldUserData.withProductData(currentItem.getId(), newProductData));
 
         data.set(d);
     }
@@ -35,7 +35,10 @@ public class SettingsDialog extends Dialog<UserSettings> {
         this.oldSettings = settings;
         setResultConverter(b -> {
             if (b == ButtonType.APPLY) {
-                UserSettings s = new UserSettings(host.getText().trim(), key.getText().trim(), secret.getText());
+                UserSettings s = (oldSettings == null ? new UserSettings() : oldSettings)
+                        .withHost(host.getText().trim())
+                        .withConsumerKey(key.getText().trim())
+                        .withConsumerSecret(secret.getText());
                 if (s.isEmpty()) {
                     return null;
                 }
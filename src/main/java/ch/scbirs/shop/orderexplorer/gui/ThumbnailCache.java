@@ -0,0 +1,60 @@
+package ch.scbirs.shop.orderexplorer.gui;
+
+import ch.scbirs.shop.orderexplorer.OrderExplorer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import javafx.scene.image.Image;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+
+/**
+ * Decoded product thumbnails, keyed by the image file name stored in the data.
+ * <p>
+ * Images are decoded in the background by JavaFX, so the caller never blocks on disk access.
+ * Files replaced by a sync are removed with {@link #invalidate(Collection)}.
+ * The cache is bounded and only holds soft references, so the images can be reclaimed under memory pressure.
+ */
+public class ThumbnailCache {
+
+    private static final int SIZE = 200;
+
+    private static final int MAX_IMAGES = 256;
+
+    private static final Cache<String, Image> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(MAX_IMAGES)
+            .softValues()
+            .build();
+
+    private ThumbnailCache() {
+    }
+
+    /**
+     * @return the thumbnail for this image file. It might still be loading, see {@link Image#progressProperty()}
+     */
+    @Nonnull
+    public static Image get(@Nonnull String filename) {
+        Image image = CACHE.getIfPresent(filename);
+        if (image == null || image.isError()) {
+            String url = OrderExplorer.FOLDER.resolve(filename).toUri().toString();
+            image = new Image(url, SIZE, SIZE, true, true, true);
+            CACHE.put(filename, image);
+        }
+        return image;
+    }
+
+    /**
+     * Removes the thumbnails of image files that were written again, they are decoded again when next shown
+     */
+    public static void invalidate(@Nonnull Collection<String> filenames) {
+        CACHE.invalidateAll(filenames);
+    }
+
+    /**
+     * @return the image to show while a thumbnail is loading or if it can't be loaded
+     */
+    @Nonnull
+    public static Image getPlaceholder() {
+        return Icons.getIcons()[0];
+    }
+}
@@ -4,36 +4,66 @@ import ch.scbirs.shop.orderexplorer.model.remote.Order;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
+/**
+ * Filters the orders with a set of named filters.
+ * <p>
+ * The orders that pass all filters are tracked in a bit set. The output list is only changed
+ * if that set or its order changed, and then in a single change. The output keeps the order of the orders,
+ * unless a filter sorts it, e.g. the search by rank.
+ */
 public class Filter {
 
     private final List<Order> orders;
     private final ObservableList<Order> filteredOutput;
 
     private final Map<String, Function<Order, Boolean>> filters;
+    private final Map<String, Comparator<Order>> sortings;
+
+    private BitSet included;
+    private boolean sorted = false;
 
     public Filter(List<Order> orders) {
         this.orders = orders;
         this.filteredOutput = FXCollections.observableArrayList(orders);
 
         filters = new HashMap<>();
+        sortings = new HashMap<>();
+        included = new BitSet(orders.size());
+        included.set(0, orders.size());
     }
 
     public Filter clone(List<Order> orders) {
         Filter filter = new Filter(orders);
-        for (String key : filters.keySet()) {
-            filter.addFilter(key, filters.get(key));
-        }
+        filter.filters.putAll(filters);
+        filter.sortings.putAll(sortings);
+        filter.update();
         return filter;
     }
 
 
     public void addFilter(String name, Function<Order, Boolean> filter) {
+        addFilter(name, filter, null);
+    }
+
+    /**
+     * @param sorting sorts the output while the filter is active, null keeps the order of the orders
+     */
+    public void addFilter(String name, Function<Order, Boolean> filter, @Nullable Comparator<Order> sorting) {
         filters.put(name, filter);
+        if (sorting == null) {
+            sortings.remove(name);
+        } else {
+            sortings.put(name, sorting);
+        }
         update();
     }
 
@@ -47,28 +77,44 @@ public class Filter {
 
     public void removeFilter(String name) {
         filters.remove(name);
+        sortings.remove(name);
         update();
     }
 
     private void update() {
-        int index = 0;
-        for (Order o : orders) {
-            boolean include = true;
-            for (Function<Order, Boolean> filter : filters.values()) {
-                include = filter.apply(o);
-                if (!include) {
-                    break;
-                }
+        BitSet next = new BitSet(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            if (include(orders.get(i))) {
+                next.set(i);
+            }
+        }
+        if (next.equals(included) && !sorted && sortings.isEmpty()) {
+            return;
+        }
+        included = next;
+
+        List<Order> output = new ArrayList<>(next.cardinality());
+        for (int i = next.nextSetBit(0); i >= 0; i = next.nextSetBit(i + 1)) {
+            output.add(orders.get(i));
+        }
+        sorted = !sortings.isEmpty();
+        if (sorted) {
+            // Stable, orders that sort equal keep their order
+            output.sort(sortings.values().stream().reduce(Comparator::thenComparing).get());
+            if (output.equals(filteredOutput)) {
+                return;
             }
-            if (include) {
-                if (!filteredOutput.contains(o)) {
-                    filteredOutput.add(index, o);
-                }
-                index += 1;
-            } else {
-                filteredOutput.remove(o);
+        }
+        filteredOutput.setAll(output);
+    }
+
+    private boolean include(Order order) {
+        for (Function<Order, Boolean> filter : filters.values()) {
+            if (!filter.apply(order)) {
+                return false;
             }
         }
+        return true;
     }
 
     public ObservableList<Order> getFilteredOutput() {
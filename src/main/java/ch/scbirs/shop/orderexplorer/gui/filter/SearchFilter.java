@@ -1,42 +1,52 @@
 package ch.scbirs.shop.orderexplorer.gui.filter;
 
 import ch.scbirs.shop.orderexplorer.model.remote.Order;
-import ch.scbirs.shop.orderexplorer.model.remote.Product;
-import ch.scbirs.shop.orderexplorer.util.Util;
 
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
+/**
+ * Matches orders by id, so the result stays valid for the orders of new data until the search runs again
+ */
 public class SearchFilter implements Function<Order, Boolean> {
 
-    private final String search;
+    private final Map<Integer, SearchIndex.Match> matches = new HashMap<>();
 
-    public SearchFilter(String search) {
-
-        this.search = search;
+    public SearchFilter(SearchIndex index, String search) {
+        for (SearchIndex.Match match : index.search(search)) {
+            matches.put(match.getOrder().getId(), match);
+        }
     }
 
     @Override
     public Boolean apply(Order order) {
-        String data = gatherData(order);
-        return data.toLowerCase().contains(search);
+        return matches.containsKey(order.getId());
     }
 
-    public String gatherData(Order order) {
-        StringBuilder b = new StringBuilder();
-        b.append(order.getFirstName()).append(" ");
-        b.append(order.getLastName()).append(" ");
-        b.append(order.getShippingFirstName()).append(" ");
-        b.append(order.getShippingLastName()).append(" ");
-        b.append(order.getEmail()).append(" ");
-        b.append(order.getStatus()).append(" ");
-        b.append(order.getNote()).append(" ");
-
-        for (Product p : order.getProducts()) {
-            b.append(p.getName()).append(" ");
-            b.append(p.getSku()).append(" ");
-            b.append(Util.formatMap(p.getMeta())).append(" ");
-        }
+    /**
+     * @return sorts the best matches first
+     */
+    @Nonnull
+    public Comparator<Order> getRanking() {
+        return Comparator.comparingInt((Order o) -> getScore(o)).reversed();
+    }
+
+    private int getScore(Order order) {
+        SearchIndex.Match match = matches.get(order.getId());
+        return match == null ? 0 : match.getScore();
+    }
 
-        return b.toString();
+    /**
+     * @return the fields of the order containing the search, empty if it doesn't match
+     */
+    @Nonnull
+    public Set<SearchIndex.Field> getMatchedFields(Order order) {
+        SearchIndex.Match match = matches.get(order.getId());
+        return match == null ? Collections.emptySet() : match.getFields();
     }
 }
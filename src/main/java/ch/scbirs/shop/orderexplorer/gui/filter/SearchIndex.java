@@ -0,0 +1,304 @@
+package ch.scbirs.shop.orderexplorer.gui.filter;
+
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import ch.scbirs.shop.orderexplorer.util.LogUtil;
+import ch.scbirs.shop.orderexplorer.util.Util;
+import com.google.common.base.MoreObjects;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * Full text index over the searchable fields of all orders.
+ * <p>
+ * The lower case text of every order is computed once and only again when the order changes. A trigram
+ * index narrows the orders that can contain a query of three or more characters, only those are checked
+ * with a substring search.
+ * Matches are ranked by the fields they were found in, prefix matches rank higher.
+ */
+public class SearchIndex {
+
+    private static final Logger LOGGER = LogUtil.get();
+
+    private static final int PREFIX_BONUS = 2;
+
+    /**
+     * The searchable fields of an order, with their weight for ranking
+     */
+    public enum Field {
+        NAME(5),
+        SHIPPING_NAME(4),
+        EMAIL(4),
+        PRODUCT(3),
+        SKU(3),
+        META(2),
+        NOTE(1),
+        STATUS(1);
+
+        private final int weight;
+
+        Field(int weight) {
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * Documents by slot, the bit sets of the trigram index refer to the slots. Slots of removed orders are
+     * free and reused by new orders.
+     */
+    private final List<Document> slots = new ArrayList<>();
+    private final BitSet free = new BitSet();
+    private final Map<Integer, Document> byId = new HashMap<>();
+    private final Map<Long, BitSet> trigrams = new HashMap<>();
+
+    public SearchIndex(List<Order> orders) {
+        update(orders);
+    }
+
+    /**
+     * Updates the index to the new orders. Only the postings of orders that were added, removed or changed
+     * are touched, the indexed text of all other orders is kept.
+     * <p>
+     * Not thread safe, updates and searches must run on the same thread.
+     */
+    public void update(List<Order> orders) {
+        long start = System.nanoTime();
+        int added = 0;
+        int removed = 0;
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            ids.add(order.getId());
+            Document doc = byId.get(order.getId());
+            if (doc != null && doc.order != order && !doc.order.equals(order)) {
+                remove(doc);
+                removed += 1;
+                doc = null;
+            }
+            if (doc == null) {
+                doc = add(order);
+                added += 1;
+            }
+            doc.order = order;
+            doc.position = i;
+        }
+        List<Document> gone = new ArrayList<>();
+        for (Document doc : byId.values()) {
+            if (!ids.contains(doc.order.getId())) {
+                gone.add(doc);
+            }
+        }
+        for (Document doc : gone) {
+            remove(doc);
+            removed += 1;
+        }
+        LOGGER.info("Indexed " + orders.size() + " orders (" + added + " added, " + removed + " removed) in "
+                + (System.nanoTime() - start) / 1000 + " us");
+    }
+
+    private Document add(Order order) {
+        int slot = free.nextSetBit(0);
+        if (slot < 0) {
+            slot = slots.size();
+            slots.add(null);
+        } else {
+            free.clear(slot);
+        }
+        Document doc = new Document(order, slot);
+        slots.set(slot, doc);
+        byId.put(order.getId(), doc);
+        for (long trigram : doc.trigrams) {
+            trigrams.computeIfAbsent(trigram, t -> new BitSet()).set(slot);
+        }
+        return doc;
+    }
+
+    private void remove(Document doc) {
+        for (long trigram : doc.trigrams) {
+            BitSet docs = trigrams.get(trigram);
+            docs.clear(doc.slot);
+            if (docs.isEmpty()) {
+                trigrams.remove(trigram);
+            }
+        }
+        slots.set(doc.slot, null);
+        free.set(doc.slot);
+        byId.remove(doc.order.getId());
+    }
+
+    /**
+     * @param query case insensitive text to search for
+     * @return all orders containing the query, best matches first, equal matches in the order of the order list
+     */
+    @Nonnull
+    public List<Match> search(String query) {
+        String q = query.toLowerCase();
+
+        List<Match> matches = new ArrayList<>();
+        BitSet candidates = candidates(q);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Match match = slots.get(i).match(q);
+            if (match != null) {
+                matches.add(match);
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::getScore).reversed().thenComparingInt(m -> m.position));
+        return matches;
+    }
+
+    private BitSet candidates(String q) {
+        BitSet candidates = new BitSet(slots.size());
+        candidates.set(0, slots.size());
+        candidates.andNot(free);
+        // Shorter queries have no trigram, all orders are candidates
+        for (int i = 0; i + 3 <= q.length() && !candidates.isEmpty(); i++) {
+            BitSet docs = trigrams.get(trigram(q, i));
+            if (docs == null) {
+                return new BitSet();
+            }
+            candidates.and(docs);
+        }
+        return candidates;
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static boolean isPrefix(String text, String q) {
+        int idx = text.indexOf(q);
+        while (idx >= 0) {
+            if (idx == 0 || !Character.isLetterOrDigit(text.charAt(idx - 1))) {
+                return true;
+            }
+            idx = text.indexOf(q, idx + 1);
+        }
+        return false;
+    }
+
+    /**
+     * The indexed text of one order
+     */
+    private static class Document {
+        private final int slot;
+        /**
+         * The current order, equal to the indexed one, and its position in the order list
+         */
+        private Order order;
+        private int position;
+        /**
+         * All fields joined, like they were searched before the index existed, so queries can span fields
+         */
+        private final String text;
+        private final Map<Field, String> fields;
+        private final long[] trigrams;
+
+        private Document(Order order, int slot) {
+            this.order = order;
+            this.slot = slot;
+            fields = new EnumMap<>(Field.class);
+            fields.put(Field.NAME, order.getFirstName() + " " + order.getLastName());
+            fields.put(Field.SHIPPING_NAME, order.getShippingFirstName() + " " + order.getShippingLastName());
+            fields.put(Field.EMAIL, order.getEmail());
+            fields.put(Field.STATUS, order.getStatus());
+            fields.put(Field.NOTE, order.getNote());
+
+            StringJoiner products = new StringJoiner(" ");
+            StringJoiner skus = new StringJoiner(" ");
+            StringJoiner meta = new StringJoiner(" ");
+            for (Product p : order.getProducts()) {
+                products.add(p.getName());
+                skus.add(p.getSku());
+                meta.add(Util.formatMap(p.getMeta()));
+            }
+            fields.put(Field.PRODUCT, products.toString());
+            fields.put(Field.SKU, skus.toString());
+            fields.put(Field.META, meta.toString());
+            fields.replaceAll((f, s) -> s.toLowerCase());
+
+            StringBuilder b = new StringBuilder();
+            for (Field f : new Field[]{Field.NAME, Field.SHIPPING_NAME, Field.EMAIL, Field.STATUS, Field.NOTE}) {
+                b.append(fields.get(f)).append(" ");
+            }
+            for (Product p : order.getProducts()) {
+                b.append(p.getName()).append(" ");
+                b.append(p.getSku()).append(" ");
+                b.append(Util.formatMap(p.getMeta())).append(" ");
+            }
+            text = b.toString().toLowerCase();
+
+            Set<Long> distinct = new HashSet<>();
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                distinct.add(trigram(text, i));
+            }
+            trigrams = distinct.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        private Match match(String q) {
+            if (!text.contains(q)) {
+                return null;
+            }
+            Set<Field> matched = EnumSet.noneOf(Field.class);
+            int score = 0;
+            for (Map.Entry<Field, String> e : fields.entrySet()) {
+                if (e.getValue().contains(q)) {
+                    matched.add(e.getKey());
+                    score += e.getKey().getWeight();
+                    if (isPrefix(e.getValue(), q)) {
+                        score += PREFIX_BONUS * e.getKey().getWeight();
+                    }
+                }
+            }
+            return new Match(order, score, matched, position);
+        }
+    }
+
+    public static class Match {
+        private final Order order;
+        private final int score;
+        private final Set<Field> fields;
+        private final int position;
+
+        private Match(Order order, int score, Set<Field> fields, int position) {
+            this.order = order;
+            this.score = score;
+            this.fields = Collections.unmodifiableSet(fields);
+            this.position = position;
+        }
+
+        @Nonnull
+        public Order getOrder() {
+            return order;
+        }
+
+        /**
+         * @return how well the order matches, higher is better
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * @return the fields containing the query, empty if the query only matches across fields
+         */
+        @Nonnull
+        public Set<Field> getFields() {
+            return fields;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("order", order.getId())
+                    .add("score", score)
+                    .add("fields", fields)
+                    .toString();
+        }
+    }
+}
@@ -44,20 +44,18 @@ public class MoneyReport extends Report {
         ExporterFactory factory = new ExporterFactory();
         factory.setHeader(HEADER);
         factory.setPath(p);
-        Exporter exporter = factory.build();
-        export(exporter);
-        exporter.save(p);
+        factory.export(this::export);
     }
 
-    private void export(Exporter exp) {
-        summary.forEach(s -> exp.addData(
-                s.getId(),
-                s.getFirstName(),
-                s.getLastName(),
-                s.getEmail(),
-                s.getTotal()
-                )
-        );
+    private void export(Exporter exp) throws IOException {
+        for (OrderSummary s : summary) {
+            exp.cell(s.getId())
+                    .cell(s.getFirstName())
+                    .cell(s.getLastName())
+                    .cell(s.getEmail())
+                    .cell(s.getTotal())
+                    .endRow();
+        }
     }
 
     @Override
@@ -43,21 +43,19 @@ public class OrderReport extends Report {
         ExporterFactory factory = new ExporterFactory();
         factory.setHeader(HEADER);
         factory.setPath(p);
-        Exporter exporter = factory.build();
-        export(exporter);
-        exporter.save(p);
+        factory.export(this::export);
     }
 
-    private void export(Exporter exp) {
-        group.forEach(pc -> exp.addData(
-                pc.getCount(),
-                pc.getProduct().getName(),
-                pc.getProduct().getSku(),
-                Util.formatMap(pc.getProduct().getMeta()).replace('\n', ','),
-                pc.getProduct().getPrice(),
-                pc.getProduct().getPrice() * pc.getCount()
-                )
-        );
+    private void export(Exporter exp) throws IOException {
+        for (ProductCount pc : group) {
+            exp.cell(pc.getCount())
+                    .cell(pc.getProduct().getName())
+                    .cell(pc.getProduct().getSku())
+                    .cell(Util.formatMap(pc.getProduct().getMeta()).replace('\n', ','))
+                    .cell(pc.getProduct().getPrice())
+                    .cell(pc.getProduct().getPrice() * pc.getCount())
+                    .endRow();
+        }
     }
 
     @Override
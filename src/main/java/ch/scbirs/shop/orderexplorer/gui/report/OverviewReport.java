@@ -44,22 +44,19 @@ public class OverviewReport extends Report {
         ExporterFactory factory = new ExporterFactory();
         factory.setHeader(HEADER);
         factory.setPath(p);
-        Exporter exporter = factory.build();
-        export(exporter);
-        exporter.save(p);
+        factory.export(this::export);
     }
 
-    private void export(Exporter exporter) {
+    private void export(Exporter exporter) throws IOException {
         for (OrderedProduct pr : productList) {
-            exporter.addData(
-                    pr.getOrder().getFirstName(),
-                    pr.getOrder().getLastName(),
-                    pr.getProduct().getName(),
-                    pr.getProduct().getQuantity(),
-                    pr.getProduct().getSku(),
-                    Util.formatMap(pr.getProduct().getMeta()),
-                    pr.getProduct().getPrice()
-            );
+            exporter.cell(pr.getOrder().getFirstName())
+                    .cell(pr.getOrder().getLastName())
+                    .cell(pr.getProduct().getName())
+                    .cell(pr.getProduct().getQuantity())
+                    .cell(pr.getProduct().getSku())
+                    .cell(Util.formatMap(pr.getProduct().getMeta()))
+                    .cell(pr.getProduct().getPrice())
+                    .endRow();
         }
     }
 
@@ -4,10 +4,14 @@ import ch.scbirs.shop.orderexplorer.model.local.UserData;
 import ch.scbirs.shop.orderexplorer.model.remote.Order;
 import ch.scbirs.shop.orderexplorer.model.remote.Product;
 import ch.scbirs.shop.orderexplorer.model.remote.products.ProductVariation;
+import ch.scbirs.shop.orderexplorer.util.OrderStatusIndex;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -29,22 +33,46 @@ public class Data {
     @Nonnull
     private final UserData userData;
 
+    /**
+     * Epoch millis of the start of the last successful sync, 0 if never synced
+     */
+    private final long lastSync;
+    /**
+     * Epoch millis of the start of the last successful full (non incremental) sync, 0 if never synced
+     */
+    private final long lastFullSync;
+    /**
+     * Built when first used, updated for the changed products when the user data changes
+     */
+    private volatile OrderStatusIndex statusIndex;
+
     public Data() {
-        orders = Collections.emptyList();
-        images = Collections.emptyMap();
-        productVariations = Collections.emptyList();
+        orders = ImmutableList.of();
+        images = ImmutableMap.of();
+        productVariations = ImmutableList.of();
         userData = new UserData();
+        lastSync = 0;
+        lastFullSync = 0;
     }
 
     public Data(@Nonnull List<Order> orders, @Nonnull Map<String, String> images,
                 @Nonnull List<ProductVariation> productVariations, @Nonnull UserData userData) {
+        this(orders, images, productVariations, userData, 0, 0);
+    }
+
+    public Data(@Nonnull List<Order> orders, @Nonnull Map<String, String> images,
+                @Nonnull List<ProductVariation> productVariations, @Nonnull UserData userData,
+                long lastSync, long lastFullSync) {
         Preconditions.checkNotNull(orders, "Orders array can't be null. Pass Collections.emptyList() instead");
         Preconditions.checkNotNull(images, "Images map can't be null. Pass Collections.emptyMap() instead");
         Preconditions.checkNotNull(userData, "UserData can't be null");
-        this.orders = Collections.unmodifiableList(new ArrayList<>(orders));
-        this.images = Collections.unmodifiableMap(new HashMap<>(images));
-        this.productVariations = Collections.unmodifiableList(new ArrayList<>(productVariations));
+        // Collections that are already immutable (e.g. passed on by the with* methods) are shared, not copied
+        this.orders = ImmutableList.copyOf(orders);
+        this.images = ImmutableMap.copyOf(images);
+        this.productVariations = ImmutableList.copyOf(productVariations);
         this.userData = userData;
+        this.lastSync = lastSync;
+        this.lastFullSync = lastFullSync;
     }
 
     public static Data fromJsonFile(@Nonnull Path file) throws IOException {
@@ -67,6 +95,8 @@ public class Data {
                 .add("orders", orders)
                 .add("images", images)
                 .add("userData", userData)
+                .add("lastSync", lastSync)
+                .add("lastFullSync", lastFullSync)
                 .toString();
     }
 
@@ -95,24 +125,56 @@ public class Data {
         return userData;
     }
 
+    public long getLastSync() {
+        return lastSync;
+    }
+
+    public long getLastFullSync() {
+        return lastFullSync;
+    }
+
+    @JsonIgnore
+    @Nonnull
+    public OrderStatusIndex getStatusIndex() {
+        OrderStatusIndex index = statusIndex;
+        if (index == null) {
+            index = new OrderStatusIndex(this);
+            statusIndex = index;
+        }
+        return index;
+    }
+
     @Nonnull
     public Data withOrders(List<Order> orders) {
-        return new Data(orders, images, productVariations, userData);
+        return new Data(orders, images, productVariations, userData, lastSync, lastFullSync);
     }
 
     @Nonnull
     public Data withImages(Map<String, String> images) {
-        return new Data(orders, images, productVariations, userData);
+        return new Data(orders, images, productVariations, userData, lastSync, lastFullSync);
     }
 
     @Nonnull
     public Data withProductVariations(List<ProductVariation> variations) {
-        return new Data(orders, images, variations, userData);
+        return new Data(orders, images, variations, userData, lastSync, lastFullSync);
     }
 
     @Nonnull
     public Data withUserData(UserData userData) {
-        return new Data(orders, images, productVariations, userData);
+        Data data = new Data(orders, images, productVariations, userData, lastSync, lastFullSync);
+        OrderStatusIndex index = statusIndex;
+        if (index != null) {
+            Set<Integer> changed = userData.changedSince(this.userData);
+            if (changed != null) {
+                data.statusIndex = index.update(data, changed);
+            }
+        }
+        return data;
+    }
+
+    @Nonnull
+    public Data withSync(long lastSync, long lastFullSync) {
+        return new Data(orders, images, productVariations, userData, lastSync, lastFullSync);
     }
 
     @Override
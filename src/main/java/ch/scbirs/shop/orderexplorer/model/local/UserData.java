@@ -3,29 +3,68 @@ package ch.scbirs.shop.orderexplorer.model.local;
 import ch.scbirs.shop.orderexplorer.model.remote.Product;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import org.pcollections.HashTreePMap;
+import org.pcollections.HashTreePSet;
+import org.pcollections.PMap;
+import org.pcollections.PSet;
 
 import javax.annotation.Nonnull;
-import java.util.Collections;
-import java.util.HashMap;
+import javax.annotation.Nullable;
 import java.util.Map;
+import java.util.Set;
 
 public class UserData {
 
+    /**
+     * Changed products tracked before the changes are compared with the current product data again
+     */
+    private static final int MAX_CHANGED = 256;
+
+    /**
+     * A persistent map, so changing the data of a single product shares most of the map
+     * with the previous user data instead of copying it
+     */
     @Nonnull
     private final Map<Integer, ProductData> productData;
     @Nonnull
     private final UserSettings userSettings;
+    /**
+     * The product data this was derived from by {@link #withProductData(int, ProductData)}, null if unknown
+     */
+    @Nullable
+    private final Map<Integer, ProductData> basis;
+    /**
+     * Ids of the products that may differ from the basis
+     */
+    @Nonnull
+    private final PSet<Integer> changed;
 
     public UserData() {
-        productData = Collections.emptyMap();
+        productData = HashTreePMap.empty();
         userSettings = new UserSettings();
+        basis = null;
+        changed = HashTreePSet.empty();
     }
 
     public UserData(@Nonnull Map<Integer, ProductData> productData,@Nonnull UserSettings userSettings) {
+        this(productData, userSettings, null, HashTreePSet.empty());
+    }
+
+    private UserData(@Nonnull Map<Integer, ProductData> productData, @Nonnull UserSettings userSettings,
+                     @Nullable Map<Integer, ProductData> basis, @Nonnull PSet<Integer> changed) {
         Preconditions.checkNotNull(productData, "productdata can't be null. use Collections.emptyMap() instead");
         Preconditions.checkNotNull(userSettings, "userSettings can't be null");
-        this.productData = Collections.unmodifiableMap(new HashMap<>(productData));
+        this.productData = persistent(productData);
         this.userSettings = userSettings;
+        this.basis = basis;
+        this.changed = changed;
+    }
+
+    private static PMap<Integer, ProductData> persistent(Map<Integer, ProductData> map) {
+        if (map instanceof PMap) {
+            return (PMap<Integer, ProductData>) map;
+        }
+        return HashTreePMap.from(map);
     }
 
     @Nonnull
@@ -66,8 +105,42 @@ public class UserData {
         return new UserData(productData, userSettings);
     }
 
+    /**
+     * Changes the data of a single product without copying the data of all other products
+     */
+    @Nonnull
+    public UserData withProductData(int productId, @Nonnull ProductData data) {
+        PMap<Integer, ProductData> next = persistent(productData).plus(productId, data);
+        // Changes made one after the other, e.g. for all products of an order, share the basis
+        if (basis != null && changed.size() < MAX_CHANGED) {
+            return new UserData(next, userSettings, basis, changed.plus(productId));
+        }
+        return new UserData(next, userSettings, productData, HashTreePSet.singleton(productId));
+    }
+
     @Nonnull
     public UserData withUserSettings(UserSettings userSettings) {
-        return new UserData(productData, userSettings);
+        return new UserData(productData, userSettings, basis, changed);
+    }
+
+    /**
+     * @return the ids of all products whose data may differ from the previous user data,
+     * or null if this wasn't derived from it with {@link #withProductData(int, ProductData)}
+     */
+    @Nullable
+    public Set<Integer> changedSince(@Nonnull UserData previous) {
+        if (productData == previous.productData) {
+            return HashTreePSet.empty();
+        }
+        if (basis == null) {
+            return null;
+        }
+        if (basis == previous.productData) {
+            return changed;
+        }
+        if (basis == previous.basis) {
+            return changed.plusAll(previous.changed);
+        }
+        return null;
     }
 }
@@ -9,26 +9,48 @@ import javax.annotation.Nonnull;
 
 public class UserSettings {
 
+    public static final int DEFAULT_TIMEOUT = 30;
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
     @Nonnull
     private final String host;
     @Nonnull
     private final String consumerKey;
     @Nonnull
     private final String consumerSecret;
+    /**
+     * Connect and read timeout in seconds
+     */
+    private final int timeout;
+    /**
+     * Maximum number of concurrent requests to the shop
+     */
+    private final int maxConnections;
 
     public UserSettings() {
         host = "";
         consumerKey = "";
         consumerSecret = "";
+        timeout = DEFAULT_TIMEOUT;
+        maxConnections = DEFAULT_MAX_CONNECTIONS;
     }
 
     public UserSettings(@Nonnull String host, @Nonnull String consumerKey, @Nonnull String consumerSecret) {
+        this(host, consumerKey, consumerSecret, DEFAULT_TIMEOUT, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    public UserSettings(@Nonnull String host, @Nonnull String consumerKey, @Nonnull String consumerSecret,
+                        int timeout, int maxConnections) {
         Preconditions.checkNotNull(host);
         Preconditions.checkNotNull(consumerKey);
         Preconditions.checkNotNull(consumerSecret);
+        Preconditions.checkArgument(timeout > 0, "timeout must be positive");
+        Preconditions.checkArgument(maxConnections > 0, "maxConnections must be positive");
         this.host = host;
         this.consumerKey = consumerKey;
         this.consumerSecret = consumerSecret;
+        this.timeout = timeout;
+        this.maxConnections = maxConnections;
     }
 
     @Nonnull
@@ -46,18 +68,36 @@ public class UserSettings {
         return consumerSecret;
     }
 
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
     public UserSettings withHost(String host) {
-        return new UserSettings(host, consumerKey, consumerSecret);
+        return new UserSettings(host, consumerKey, consumerSecret, timeout, maxConnections);
     }
 
     @Nonnull
     public UserSettings withConsumerKey(String consumerKey) {
-        return new UserSettings(host, consumerKey, consumerSecret);
+        return new UserSettings(host, consumerKey, consumerSecret, timeout, maxConnections);
     }
 
     @Nonnull
     public UserSettings withConsumerSecret(String consumerSecret) {
-        return new UserSettings(host, consumerKey, consumerSecret);
+        return new UserSettings(host, consumerKey, consumerSecret, timeout, maxConnections);
+    }
+
+    @Nonnull
+    public UserSettings withTimeout(int timeout) {
+        return new UserSettings(host, consumerKey, consumerSecret, timeout, maxConnections);
+    }
+
+    @Nonnull
+    public UserSettings withMaxConnections(int maxConnections) {
+        return new UserSettings(host, consumerKey, consumerSecret, timeout, maxConnections);
     }
 
     @Override
@@ -66,6 +106,8 @@ public class UserSettings {
                 .add("host", host)
                 .add("consumerKey", consumerKey)
                 .add("consumerSecret", consumerSecret)
+                .add("timeout", timeout)
+                .add("maxConnections", maxConnections)
                 .toString();
     }
 
@@ -76,12 +118,14 @@ public class UserSettings {
         UserSettings that = (UserSettings) o;
         return Objects.equal(host, that.host) &&
                 Objects.equal(consumerKey, that.consumerKey) &&
-                Objects.equal(consumerSecret, that.consumerSecret);
+                Objects.equal(consumerSecret, that.consumerSecret) &&
+                timeout == that.timeout &&
+                maxConnections == that.maxConnections;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(host, consumerKey, consumerSecret);
+        return Objects.hashCode(host, consumerKey, consumerSecret, timeout, maxConnections);
     }
 
     @JsonIgnore
@@ -0,0 +1,40 @@
+package ch.scbirs.shop.orderexplorer.report;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+/**
+ * Tracks the longest value of every column while rows are written.
+ * <p>
+ * Replaces {@link Sheet#autoSizeColumn(int)}, which needs all rows in memory and measures every cell again.
+ */
+class ColumnWidths {
+
+    private static final int PADDING = 2;
+    /**
+     * Widest column excel allows, in characters
+     */
+    private static final int MAX_WIDTH = 255;
+
+    private final int[] lengths;
+
+    ColumnWidths(int columns) {
+        lengths = new int[columns];
+    }
+
+    void track(int column, String value) {
+        if (value != null && value.length() > lengths[column]) {
+            lengths[column] = value.length();
+        }
+    }
+
+    void track(int column, double value) {
+        track(column, String.valueOf(value));
+    }
+
+    void apply(Sheet sheet) {
+        for (int i = 0; i < lengths.length; i++) {
+            // Width is in 1/256 of a character
+            sheet.setColumnWidth(i, Math.min(MAX_WIDTH, lengths[i] + PADDING) * 256);
+        }
+    }
+}
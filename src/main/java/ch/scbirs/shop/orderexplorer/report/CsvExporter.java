@@ -0,0 +1,11 @@
+package ch.scbirs.shop.orderexplorer.report;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class CsvExporter extends DelimitedExporter {
+
+    public CsvExporter(Path p, String... header) throws IOException {
+        super(p, ',', header);
+    }
+}
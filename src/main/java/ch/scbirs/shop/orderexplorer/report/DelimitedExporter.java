@@ -0,0 +1,88 @@
+package ch.scbirs.shop.orderexplorer.report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes rows of delimiter separated values as UTF-8.
+ * <p>
+ * The file starts with a byte order mark and rows end with CRLF, otherwise Excel on Windows reads the file
+ * in the ANSI code page and breaks umlauts.
+ * <p>
+ * Values containing the delimiter, a quote or a line break are quoted and quotes are doubled, like RFC 4180
+ * describes for CSV. Notes and product meta often contain line breaks.
+ */
+public class DelimitedExporter extends Exporter {
+
+    private static final char QUOTE = '"';
+    private static final char BOM = '\uFEFF';
+    private static final String LINE_END = "\r\n";
+
+    private final Writer writer;
+    private final char delimiter;
+
+    public DelimitedExporter(Path p, char delimiter, String... header) throws IOException {
+        super(header);
+        this.delimiter = delimiter;
+        writer = Files.newBufferedWriter(p, StandardCharsets.UTF_8);
+        try {
+            writer.write(BOM);
+            writeHeader(header);
+        } catch (IOException | RuntimeException e) {
+            abort(e);
+            throw e;
+        }
+    }
+
+    @Override
+    protected void writeCell(int column, String value) throws IOException {
+        if (column > 0) {
+            writer.write(delimiter);
+        }
+        if (needsQuotes(value)) {
+            writer.write(QUOTE);
+            int start = 0;
+            for (int i = value.indexOf(QUOTE); i >= 0; i = value.indexOf(QUOTE, i + 1)) {
+                writer.write(value, start, i + 1 - start);
+                writer.write(QUOTE);
+                start = i + 1;
+            }
+            writer.write(value, start, value.length() - start);
+            writer.write(QUOTE);
+        } else {
+            writer.write(value);
+        }
+    }
+
+    private boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == delimiter || c == QUOTE || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void writeEndRow() throws IOException {
+        writer.write(LINE_END);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public void abort(Throwable cause) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
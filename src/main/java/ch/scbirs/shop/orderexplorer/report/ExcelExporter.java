@@ -2,47 +2,123 @@ package ch.scbirs.shop.orderexplorer.report;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
 
 public class ExcelExporter extends Exporter {
 
-    public ExcelExporter(String... headers) {
+    /**
+     * Rows kept in memory while writing .xlsx files, older rows are flushed to a temporary file
+     */
+    private static final int ROW_WINDOW = 100;
+
+    private final Path path;
+    private final Workbook workbook;
+    private final Sheet sheet;
+    private final CellStyle normalStyle;
+    private final ColumnWidths widths;
+
+    private CellStyle style;
+    private Row row;
+    private int rowNr = 0;
+
+    public ExcelExporter(Path p, String... headers) throws IOException {
         super(headers);
+        path = p;
+        workbook = createWorkbook(p);
+        sheet = workbook.createSheet("Report");
+        widths = new ColumnWidths(headers.length);
+
+        Font headerFont = workbook.createFont();
+        headerFont.setBold(true);
+
+        CellStyle headerStyle = workbook.createCellStyle();
+        normalStyle = workbook.createCellStyle();
+        headerStyle.setFont(headerFont);
+
+        style = headerStyle;
+        try {
+            writeHeader(headers);
+        } catch (IOException | RuntimeException e) {
+            abort(e);
+            throw e;
+        }
+        style = normalStyle;
     }
 
-    @Override
-    public void save(Path p) throws IOException {
-        try (Workbook workbook = new HSSFWorkbook();
-             OutputStream os = Files.newOutputStream(p)) {
-            Sheet sheet = workbook.createSheet("Report");
+    private Cell createCell(int column) {
+        if (row == null) {
+            row = sheet.createRow(rowNr);
+        }
+        Cell cell = row.createCell(column);
+        cell.setCellStyle(style);
+        return cell;
+    }
 
-            Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
+    @Override
+    protected void writeCell(int column, String value) {
+        createCell(column).setCellValue(value);
+        widths.track(column, value);
+    }
 
-            CellStyle headerStyle = workbook.createCellStyle();
-            CellStyle normalStyle = workbook.createCellStyle();
-            headerStyle.setFont(headerFont);
+    @Override
+    protected void writeCell(int column, double value) {
+        createCell(column).setCellValue(value);
+        widths.track(column, value);
+    }
 
-            row(data.get(0), sheet.createRow(0), headerStyle);
+    @Override
+    protected void writeCell(int column, long value) {
+        createCell(column).setCellValue(value);
+        widths.track(column, String.valueOf(value));
+    }
 
-            for (int i = 1; i < data.size(); i++) {
-                row(data.get(i), sheet.createRow(i), normalStyle);
-            }
+    @Override
+    protected void writeEndRow() {
+        row = null;
+        rowNr += 1;
+    }
 
+    @Override
+    public void close() throws IOException {
+        try (OutputStream os = Files.newOutputStream(path)) {
+            widths.apply(sheet);
             workbook.write(os);
+        } finally {
+            dispose(workbook);
+        }
+    }
+
+    @Override
+    public void abort(Throwable cause) {
+        try {
+            dispose(workbook);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * @return a streaming workbook for .xlsx files, the old in memory workbook for .xls files
+     */
+    static Workbook createWorkbook(Path p) {
+        if (p.toString().toLowerCase().endsWith(".xls")) {
+            return new HSSFWorkbook();
         }
+        return new SXSSFWorkbook(ROW_WINDOW);
     }
 
-    private void row(List<String> vals, Row row, CellStyle style) {
-        for (int i = 0; i < vals.size(); i++) {
-            Cell cell = row.createCell(i);
-            cell.setCellValue(vals.get(i));
-            cell.setCellStyle(style);
+    /**
+     * Closes the workbook and deletes the temporary files of a streaming workbook
+     */
+    static void dispose(Workbook workbook) throws IOException {
+        if (workbook instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook) workbook).dispose();
         }
+        workbook.close();
     }
 }
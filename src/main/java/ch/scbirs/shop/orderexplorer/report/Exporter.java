@@ -2,35 +2,80 @@ package ch.scbirs.shop.orderexplorer.report;
 
 import com.google.common.base.Preconditions;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
 
-public abstract class Exporter {
+/**
+ * Writes a table row by row.
+ * <p>
+ * Cells are added to the current row with the typed {@code cell} methods, {@link #endRow()} completes it.
+ * Exporters write every row to their output right away where the format allows it, {@link #close()}
+ * completes the output, {@link #abort(Throwable)} discards it.
+ */
+public abstract class Exporter implements Closeable {
 
-    protected final List<List<String>> data = new ArrayList<>();
     private final int columns;
+    private int column = 0;
 
     public Exporter(String[] headers) {
         this.columns = headers.length;
-        addData((Object[]) headers);
     }
 
-    public void addData(List<String> d) {
-        Preconditions.checkArgument(d.size() == columns, "Data size must be equal to columns (%s)", columns);
-        data.add(d);
+    public Exporter cell(String value) throws IOException {
+        writeCell(nextColumn(), String.valueOf(value));
+        return this;
     }
 
-    public void addData(Object... o) {
-        Preconditions.checkArgument(o.length == columns, "Data size must be equal to columns (%s)", columns);
-        data.add(Arrays.stream(o)
-                .map(String::valueOf)
-                .collect(Collectors.toList())
-        );
+    public Exporter cell(double value) throws IOException {
+        writeCell(nextColumn(), value);
+        return this;
     }
 
-    public abstract void save(Path p) throws IOException;
+    public Exporter cell(long value) throws IOException {
+        writeCell(nextColumn(), value);
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        Preconditions.checkState(column == columns, "Row must have %s cells, has %s", columns, column);
+        writeEndRow();
+        column = 0;
+    }
+
+    /**
+     * Writes the header as the first row, called by the constructor of subclasses once their output is open
+     */
+    protected void writeHeader(String[] headers) throws IOException {
+        for (String header : headers) {
+            cell(header);
+        }
+        endRow();
+    }
+
+    private int nextColumn() {
+        Preconditions.checkState(column < columns, "Row can't have more than %s cells", columns);
+        return column++;
+    }
+
+    protected abstract void writeCell(int column, String value) throws IOException;
+
+    /**
+     * Text formats write numbers as text, spreadsheets override this to write numeric cells
+     */
+    protected void writeCell(int column, double value) throws IOException {
+        writeCell(column, String.valueOf(value));
+    }
+
+    protected void writeCell(int column, long value) throws IOException {
+        writeCell(column, String.valueOf(value));
+    }
+
+    protected abstract void writeEndRow() throws IOException;
+
+    /**
+     * Discards the output instead of completing it, used instead of {@link #close()} when writing failed
+     *
+     * @param cause the failure, exceptions while discarding the output are added to it as suppressed
+     */
+    public abstract void abort(Throwable cause);
 }
@@ -1,15 +1,20 @@
 package ch.scbirs.shop.orderexplorer.report;
 
+import com.google.common.base.Preconditions;
 import javafx.stage.FileChooser;
 import org.apache.commons.io.FilenameUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.List;
 
 public class ExporterFactory {
     private String[] header;
     private String ext;
+    private Path path;
 
     public ExporterFactory() {
 
@@ -23,8 +28,10 @@ public class ExporterFactory {
     public static List<FileChooser.ExtensionFilter> getSupportedExtensions() {
         return Arrays.asList(
                 new FileChooser.ExtensionFilter("PDF", "*.pdf"),
-                new FileChooser.ExtensionFilter("Excel File", "*.xls"),
-                new FileChooser.ExtensionFilter("TSV File", "*.tsv")
+                new FileChooser.ExtensionFilter("Excel File", "*.xlsx"),
+                new FileChooser.ExtensionFilter("Excel 97 File", "*.xls"),
+                new FileChooser.ExtensionFilter("TSV File", "*.tsv"),
+                new FileChooser.ExtensionFilter("CSV File", "*.csv")
         );
     }
 
@@ -37,19 +44,70 @@ public class ExporterFactory {
     }
 
     public void setPath(Path p) {
+        path = p;
         ext = FilenameUtils.getExtension(p.toString());
     }
 
-    public Exporter build() {
+    /**
+     * Writes the rows to a temporary file that replaces the file at the path once it is complete,
+     * if writing fails the file at the path stays unchanged
+     */
+    public void export(Rows rows) throws IOException {
+        Preconditions.checkState(path != null, "Path must be set before exporting");
+        Path tmp = tempFile(path);
+        try {
+            Exporter exporter = build(tmp);
+            try {
+                rows.write(exporter);
+            } catch (IOException | RuntimeException e) {
+                exporter.abort(e);
+                throw e;
+            }
+            exporter.close();
+            replace(tmp, path);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @return an exporter writing to the path, must be closed to complete the file
+     */
+    public Exporter build() throws IOException {
+        Preconditions.checkState(path != null, "Path must be set before building an exporter");
+        return build(path);
+    }
+
+    private Exporter build(Path p) throws IOException {
         switch (ext) {
             case "pdf":
-                return new PDFExporter(header);
+                return new PDFExporter(p, header);
+            case "xlsx":
             case "xls":
-                return new ExcelExporter(header);
+                return new ExcelExporter(p, header);
             case "tsv":
-                return new TsvExporter(header);
+                return new TsvExporter(p, header);
+            case "csv":
+                return new CsvExporter(p, header);
             default:
                 throw new IllegalStateException("No registered exporter uses extension ." + ext);
         }
     }
+
+    /**
+     * @return a new empty file next to the path with the same extension
+     */
+    static Path tempFile(Path p) throws IOException {
+        Path absolute = p.toAbsolutePath();
+        return Files.createTempFile(absolute.getParent(), "." + absolute.getFileName() + ".",
+                "." + FilenameUtils.getExtension(p.toString()));
+    }
+
+    static void replace(Path tmp, Path p) throws IOException {
+        Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public interface Rows {
+        void write(Exporter exporter) throws IOException;
+    }
 }
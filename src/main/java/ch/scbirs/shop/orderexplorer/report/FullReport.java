@@ -7,7 +7,6 @@ import ch.scbirs.shop.orderexplorer.report.model.OrderedProductFactory;
 import ch.scbirs.shop.orderexplorer.report.model.ProductCount;
 import ch.scbirs.shop.orderexplorer.report.model.ProductCountFactory;
 import ch.scbirs.shop.orderexplorer.util.Util;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 
 import java.io.IOException;
@@ -16,34 +15,52 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
+/**
+ * Excel report of all orders, the ordered products and the product catalogue.
+ * Saved as .xlsx, the rows are streamed to disk while the sheets are generated.
+ */
 public class FullReport {
 
     private final Data data;
     private CellStyle headerStyle;
     private CellStyle normalStyle;
+    /**
+     * Widths of the sheet that is currently generated
+     */
+    private ColumnWidths widths;
 
     public FullReport(Data data) {
 
         this.data = data;
     }
 
+    /**
+     * Writes the report to a temporary file first, the file at the path is only replaced by a complete report
+     */
     public void save(Path p) throws IOException {
-        try (Workbook wb = new HSSFWorkbook();
-             OutputStream os = Files.newOutputStream(p)) {
+        Workbook wb = ExcelExporter.createWorkbook(p);
+        Path tmp = ExporterFactory.tempFile(p);
+        try {
             makeStyles(wb);
 
             generateOrderReport(wb);
             generateOverviewReport(wb);
             generateProductsReport(wb);
 
-            wb.write(os);
+            try (OutputStream os = Files.newOutputStream(tmp)) {
+                wb.write(os);
+            }
+            ExporterFactory.replace(tmp, p);
+        } finally {
+            Files.deleteIfExists(tmp);
+            ExcelExporter.dispose(wb);
         }
     }
 
     private void generateProductsReport(Workbook wb) {
         Sheet sheet = wb.createSheet("All Products");
 
-        int cols = addHeader(sheet, "Name", "ProductID", "Price", "Url");
+        addHeader(sheet, "Name", "ProductID", "Price", "Url");
         int rowNr = 1;
         List<ProductVariation> var = data.getProductVariations();
 
@@ -56,13 +73,13 @@ public class FullReport {
             c = makeCell(c, r, v.getPrice());
             makeCell(c, r, v.getPermalink());
         }
-        autosize(sheet, cols);
+        widths.apply(sheet);
     }
 
     private void generateOverviewReport(Workbook wb) {
         Sheet sheet = wb.createSheet("Ordered Product Summary");
 
-        int cols = addHeader(sheet, "Amount", "Name", "SKU", "Meta", "Price", "Total");
+        addHeader(sheet, "Amount", "Name", "SKU", "Meta", "Price", "Total");
         int rowNr = 1;
         List<ProductCount> pc = new ProductCountFactory(data).build();
 
@@ -78,7 +95,7 @@ public class FullReport {
             c = makeCell(c, r, price);
             makeCell(c, r, price * p.getCount());
         }
-        autosize(sheet, cols);
+        widths.apply(sheet);
     }
 
 
@@ -86,7 +103,7 @@ public class FullReport {
         Sheet sheet = wb.createSheet("All Orders");
 
 
-        int cols = addHeader(sheet, "Id", "Order Id", "First Name", "Last Name", "Product Name",
+        addHeader(sheet, "Id", "Order Id", "First Name", "Last Name", "Product Name",
                 "SKU", "Meta", "Amount", "Price", "Total", "Status");
 
         int rowNr = 1;
@@ -110,38 +127,35 @@ public class FullReport {
                     p.getProduct()
             ).getStatus().toString().toLowerCase());
         }
-        autosize(sheet, cols);
+        widths.apply(sheet);
     }
 
-    private int addHeader(Sheet sheet, String... header) {
+    private void addHeader(Sheet sheet, String... header) {
+        widths = new ColumnWidths(header.length);
         Row r = sheet.createRow(0);
         for (int i = 0; i < header.length; i++) {
             String s = header[i];
             Cell cell = r.createCell(i);
             cell.setCellValue(s);
             cell.setCellStyle(headerStyle);
+            widths.track(i, s);
         }
-        return header.length;
     }
 
     private int makeCell(int i, Row r, String value) {
+        widths.track(i, value);
         Cell c = r.createCell(i++);
         c.setCellValue(value);
         return i;
     }
 
     private int makeCell(int i, Row r, double value) {
+        widths.track(i, value);
         Cell c = r.createCell(i++);
         c.setCellValue(value);
         return i;
     }
 
-    private void autosize(Sheet s, int cols) {
-        for (int i = 0; i < cols; i++) {
-            s.autoSizeColumn(i);
-        }
-    }
-
     private void makeStyles(Workbook wb) {
         Font bold = wb.createFont();
         bold.setBold(true);
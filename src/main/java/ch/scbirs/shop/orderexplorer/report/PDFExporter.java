@@ -10,16 +10,41 @@ import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * The table layout needs all rows, so rows are buffered and the document is generated at the end
+ */
 public class PDFExporter extends Exporter {
     private static final Logger LOGGER = LogUtil.get();
 
+    private final List<List<String>> data = new ArrayList<>();
+    @Nullable
+    private final Path path;
+    private List<String> row = new ArrayList<>();
+
+    /**
+     * Exporter that only buffers the rows for {@link #generatePDDocument()}
+     */
     public PDFExporter(String[] header) {
+        this(null, header);
+    }
+
+    /**
+     * Exporter that saves the document to the path when closed
+     */
+    public PDFExporter(@Nullable Path p, String[] header) {
         super(header);
+        path = p;
+        for (String h : header) {
+            row.add(h);
+        }
+        writeEndRow();
     }
 
     public PDDocument generatePDDocument() throws IOException {
@@ -62,28 +87,28 @@ public class PDFExporter extends Exporter {
     }
 
     @Override
-    public void addData(List<String> d) {
-        for (int i = 0; i < d.size(); i++) {
-            d.set(i, d.get(i).replace('\r', ' ').replace('\n', ' '));
-        }
-        super.addData(d);
+    protected void writeCell(int column, String value) {
+        row.add(value.replace('\r', ' ').replace('\n', ' '));
     }
 
     @Override
-    public void addData(Object... o) {
-        for (int i = 0; i < o.length; i++) {
-            if (o[i] instanceof String) {
-                o[i] = ((String) o[i]).replace('\r', ' ').replace('\n', ' ');
+    protected void writeEndRow() {
+        data.add(row);
+        row = new ArrayList<>(row.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (path != null) {
+            try (PDDocument doc = generatePDDocument()) {
+                doc.save(path.toFile());
             }
         }
-        super.addData(o);
     }
 
     @Override
-    public void save(Path p) throws IOException {
-        try (PDDocument doc = generatePDDocument()) {
-            doc.save(p.toFile());
-        }
+    public void abort(Throwable cause) {
+        data.clear();
     }
 
     private double[] getStringWidths(List<List<String>> table, PDFont font) throws IOException {
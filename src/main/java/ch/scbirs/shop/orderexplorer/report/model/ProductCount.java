@@ -2,6 +2,9 @@ package ch.scbirs.shop.orderexplorer.report.model;
 
 import ch.scbirs.shop.orderexplorer.model.remote.Product;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+
+import java.util.Map;
 
 public class ProductCount {
 
@@ -25,11 +28,11 @@ public class ProductCount {
         count += amt;
     }
 
-    public boolean same(Product p) {
-        if (p.getProductId() != product.getProductId() || p.getVariationId() != product.getVariationId()) {
-            return false;
-        }
-        return p.getMeta().equals(product.getMeta());
+    /**
+     * @return the key of all products that are counted together with this product
+     */
+    public static Key key(Product p) {
+        return new Key(p.getProductId(), p.getVariationId(), p.getMeta());
     }
 
     @Override
@@ -39,4 +42,37 @@ public class ProductCount {
                 .add("product", product)
                 .toString();
     }
+
+    /**
+     * Products with the same id, variation and meta data are counted together
+     */
+    public static final class Key {
+        private final int productId;
+        private final int variationId;
+        private final Map<String, String> meta;
+        private final int hash;
+
+        private Key(int productId, int variationId, Map<String, String> meta) {
+            this.productId = productId;
+            this.variationId = variationId;
+            this.meta = meta;
+            hash = Objects.hashCode(productId, variationId, meta);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hash == key.hash &&
+                    productId == key.productId &&
+                    variationId == key.variationId &&
+                    Objects.equal(meta, key.meta);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
@@ -1,12 +1,13 @@
 package ch.scbirs.shop.orderexplorer.report.model;
 
 import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
 import ch.scbirs.shop.orderexplorer.model.remote.Product;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public class ProductCountFactory {
 
@@ -17,24 +18,24 @@ public class ProductCountFactory {
         this.data = data;
     }
 
+    /**
+     * @return the summed up quantity of every product, in the order the products first appear in the orders
+     */
     public List<ProductCount> build() {
-        List<Product> products = data.getOrders()
-                .stream()
-                .flatMap(o -> o.getProducts().stream())
-                .collect(Collectors.toList());
-
-        List<ProductCount> counts = new ArrayList<>();
-
-        for (Product p : products) {
-
-            Optional<ProductCount> first = counts.stream().filter(pc -> pc.same(p)).findFirst();
-            if (!first.isPresent()) {
-                counts.add(new ProductCount(p));
-            } else {
-                first.get().inc(p.getQuantity());
+        Map<ProductCount.Key, ProductCount> counts = new LinkedHashMap<>();
+
+        for (Order o : data.getOrders()) {
+            for (Product p : o.getProducts()) {
+                ProductCount.Key key = ProductCount.key(p);
+                ProductCount count = counts.get(key);
+                if (count == null) {
+                    counts.put(key, new ProductCount(p));
+                } else {
+                    count.inc(p.getQuantity());
+                }
             }
         }
-        return counts;
+        return new ArrayList<>(counts.values());
     }
 
 }
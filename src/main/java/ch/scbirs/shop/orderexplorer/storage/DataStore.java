@@ -0,0 +1,383 @@
+package ch.scbirs.shop.orderexplorer.storage;
+
+import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.ProductData;
+import ch.scbirs.shop.orderexplorer.model.local.UserData;
+import ch.scbirs.shop.orderexplorer.util.LogUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves the data in two independent files: the small user data file and the {@link RemoteCache} file.
+ * <p>
+ * The user data is saved as a snapshot plus an append only journal. If only product statuses changed
+ * since the last save, the changed statuses are appended to the journal. Other changes, and a journal
+ * that grew too long, are compacted into a new snapshot. Loading replays the journal on top of the snapshot.
+ * The remote cache is only written if it changed, in the configured {@link SnapshotFormat}.
+ * A cache in another format is still read and converted on the next save.
+ * <p>
+ * The user data can be loaded on its own, so the window can be shown before the remote cache is parsed.
+ * Data in the old single file format is migrated on the first load.
+ */
+public class DataStore {
+
+    private static final Logger LOGGER = LogUtil.get();
+
+    private static final int MAX_JOURNAL_ENTRIES = 1000;
+
+    private final Path userDataFile;
+    private final Path journal;
+    private final Path remoteBase;
+    private final SnapshotFormat remoteFormat;
+    private final Path legacyFile;
+    private final ObjectMapper om = new ObjectMapper();
+
+    /**
+     * The state of the files on disk, null if not loaded yet
+     */
+    @Nullable
+    private UserData savedUserData;
+    @Nonnull
+    private RemoteCache savedRemote = new RemoteCache();
+    /**
+     * False while the remote cache on disk isn't part of the data yet, the data must not overwrite it then
+     */
+    private boolean remoteLoaded = false;
+    private int journalEntries = 0;
+
+    /**
+     * @param remoteBase   remote cache file name without extension, the extension depends on the format
+     * @param remoteFormat format to save the remote cache in
+     * @param legacyFile   data in the single file format used before, migrated if the other files don't exist
+     */
+    public DataStore(Path userDataFile, Path journal, Path remoteBase, SnapshotFormat remoteFormat, Path legacyFile) {
+        this.userDataFile = userDataFile;
+        this.journal = journal;
+        this.remoteBase = remoteBase;
+        this.remoteFormat = remoteFormat;
+        this.legacyFile = legacyFile;
+    }
+
+    public boolean exists() {
+        return Files.exists(userDataFile) || existingRemoteFormat() != null || Files.exists(legacyFile);
+    }
+
+    /**
+     * @return the format of the existing remote cache, preferring the configured format
+     */
+    @Nullable
+    private SnapshotFormat existingRemoteFormat() {
+        if (Files.exists(remoteFormat.file(remoteBase))) {
+            return remoteFormat;
+        }
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            if (Files.exists(format.file(remoteBase))) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads both files
+     */
+    @Nonnull
+    public Data load() throws IOException {
+        UserData userData = loadUserData();
+        RemoteCache remote = loadRemote();
+        remoteApplied(remote);
+        return remote.toData(userData);
+    }
+
+    /**
+     * Loads the user data snapshot and replays the journal, migrating from the old format if necessary
+     */
+    @Nonnull
+    public synchronized UserData loadUserData() throws IOException {
+        migrate();
+
+        UserData userData = Files.exists(userDataFile) ? om.readValue(userDataFile.toFile(), UserData.class) : new UserData();
+
+        journalEntries = 0;
+        if (Files.exists(journal)) {
+            boolean complete = Files.size(journal) == 0 || endsWithNewline();
+            int lines = countLines();
+            userData = replayJournal(userData);
+            LOGGER.info("Replayed " + journalEntries + " journal entries");
+            if (journalEntries < lines || !complete) {
+                // Entries appended after a damaged entry would never be replayed, start over with a clean snapshot
+                LOGGER.warn("Journal is damaged, compacting it into a new snapshot");
+                saveUserDataSnapshot(userData);
+            }
+        }
+        savedUserData = userData;
+        remoteLoaded = existingRemoteFormat() == null;
+        return userData;
+    }
+
+    /**
+     * Loads the remote cache. Can be called from any thread, concurrently with saving user data.
+     * Remote data is only saved again after {@link #remoteApplied(RemoteCache)}.
+     */
+    @Nonnull
+    public RemoteCache loadRemote() throws IOException {
+        SnapshotFormat format = existingRemoteFormat();
+        if (format == null) {
+            return new RemoteCache();
+        }
+        long start = System.nanoTime();
+        RemoteCache remote = format.read(format.file(remoteBase), RemoteCache.class);
+        // Pass the collections through the Data constructor once, so later with* calls can share them
+        remote = RemoteCache.of(remote.toData(new UserData()));
+        LOGGER.info("Loaded " + remote.getOrders().size() + " orders from " + format + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return remote;
+    }
+
+    /**
+     * Marks the loaded remote cache as part of the data, from now on remote changes are saved
+     */
+    public synchronized void remoteApplied(@Nonnull RemoteCache remote) {
+        // A cache in another format isn't marked as saved, so the next save converts it
+        if (existingRemoteFormat() == remoteFormat) {
+            savedRemote = remote;
+        }
+        remoteLoaded = true;
+    }
+
+    private UserData replayJournal(UserData userData) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                JournalEntry entry;
+                try {
+                    entry = om.readValue(line, JournalEntry.class);
+                } catch (IOException e) {
+                    // A crash while appending leaves an incomplete last entry
+                    LOGGER.warn("Ignoring damaged journal entry " + (journalEntries + 1), e);
+                    break;
+                }
+                userData = userData.withProductData(entry.getProductId(), entry.getProductData());
+                journalEntries += 1;
+            }
+        }
+        return userData;
+    }
+
+    private int countLines() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            return (int) reader.lines().filter(line -> !line.isEmpty()).count();
+        }
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return true;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    private void migrate() throws IOException {
+        if (!Files.exists(legacyFile) || Files.exists(userDataFile) || existingRemoteFormat() != null) {
+            return;
+        }
+        LOGGER.info("Migrating " + legacyFile + " to separate user data and remote cache files");
+        Data data = Data.fromJsonFile(legacyFile);
+        // The journal was written against the old file
+        if (Files.exists(journal)) {
+            data = data.withUserData(replayJournal(data.getUserData()));
+        }
+        writeRemote(RemoteCache.of(data));
+        saveUserDataSnapshot(data.getUserData());
+        Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".old"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Saves the data, appending to the user data journal if possible
+     */
+    public synchronized void save(@Nonnull Data data) throws IOException {
+        if (remoteLoaded) {
+            saveRemote(data, false);
+        } else {
+            LOGGER.info("Remote cache not loaded yet, only saving user data");
+        }
+
+        UserData userData = data.getUserData();
+        if (savedUserData != null && userData.getUserSettings().equals(savedUserData.getUserSettings())) {
+            List<JournalEntry> entries = changedProductData(savedUserData, userData);
+            if (entries != null && journalEntries + entries.size() <= MAX_JOURNAL_ENTRIES) {
+                append(entries);
+                savedUserData = userData;
+                return;
+            }
+        }
+        saveUserDataSnapshot(userData);
+    }
+
+    /**
+     * Writes both files and clears the journal
+     */
+    public synchronized void saveSnapshot(@Nonnull Data data) throws IOException {
+        if (!remoteLoaded) {
+            LOGGER.info("Replacing the remote cache that wasn't loaded yet");
+        }
+        saveRemote(data, true);
+        remoteLoaded = true;
+        saveUserDataSnapshot(data.getUserData());
+    }
+
+    private void saveRemote(Data data, boolean force) throws IOException {
+        RemoteCache remote = RemoteCache.of(data);
+        if (force || !remote.sameAs(savedRemote)) {
+            writeRemote(remote);
+            savedRemote = remote;
+        }
+    }
+
+    private void writeRemote(RemoteCache remote) throws IOException {
+        Path file = remoteFormat.file(remoteBase);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        remoteFormat.write(tmp, remote);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            if (format != remoteFormat) {
+                Files.deleteIfExists(format.file(remoteBase));
+            }
+        }
+        LOGGER.info("Saved remote cache " + file);
+    }
+
+    private void saveUserDataSnapshot(UserData userData) throws IOException {
+        writeAtomic(userDataFile, userData);
+        // Entries left over after a crash at this point are already part of the snapshot, replaying them is harmless
+        Files.deleteIfExists(journal);
+        journalEntries = 0;
+        savedUserData = userData;
+        LOGGER.info("Saved user data " + userDataFile);
+    }
+
+    private void writeAtomic(Path file, Object value) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        om.writeValue(tmp.toFile(), value);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void append(List<JournalEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        StringBuilder b = new StringBuilder();
+        if (Files.exists(journal) && !endsWithNewline()) {
+            // Never continue an incomplete entry
+            b.append('\n');
+        }
+        for (JournalEntry entry : entries) {
+            b.append(om.writeValueAsString(entry)).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(b.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        journalEntries += entries.size();
+        LOGGER.info("Appended " + entries.size() + " entries to the journal");
+    }
+
+    /**
+     * Only looks at the products changed since the last save if the user data knows them,
+     * compares all products otherwise
+     *
+     * @return the changed product data, or null if product data was removed, which the journal can't express
+     */
+    @Nullable
+    private static List<JournalEntry> changedProductData(UserData before, UserData after) {
+        Map<Integer, ProductData> a = before.getProductData();
+        Map<Integer, ProductData> b = after.getProductData();
+        if (a == b) {
+            return new ArrayList<>();
+        }
+        Set<Integer> changed = after.changedSince(before);
+        if (changed != null) {
+            List<JournalEntry> entries = new ArrayList<>();
+            for (Integer id : changed) {
+                ProductData value = b.get(id);
+                if (value == null) {
+                    if (a.containsKey(id)) {
+                        return null;
+                    }
+                } else if (!value.equals(a.get(id))) {
+                    entries.add(new JournalEntry(id, value));
+                }
+            }
+            return entries;
+        }
+        for (Integer id : a.keySet()) {
+            if (!b.containsKey(id)) {
+                return null;
+            }
+        }
+        List<JournalEntry> entries = new ArrayList<>();
+        for (Map.Entry<Integer, ProductData> e : b.entrySet()) {
+            ProductData old = a.get(e.getKey());
+            if (old != e.getValue() && !e.getValue().equals(old)) {
+                entries.add(new JournalEntry(e.getKey(), e.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * The new data of a single product
+     */
+    public static class JournalEntry {
+        private final int productId;
+        @Nonnull
+        private final ProductData productData;
+
+        public JournalEntry() {
+            productId = 0;
+            productData = new ProductData();
+        }
+
+        public JournalEntry(int productId, @Nonnull ProductData productData) {
+            this.productId = productId;
+            this.productData = productData;
+        }
+
+        public int getProductId() {
+            return productId;
+        }
+
+        @Nonnull
+        public ProductData getProductData() {
+            return productData;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ch.scbirs.shop.orderexplorer.storage;
+
+import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.UserData;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.products.ProductVariation;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of {@link Data} that is loaded from the shop and can be synced again at any time
+ */
+public class RemoteCache {
+
+    @Nonnull
+    private final List<Order> orders;
+    @Nonnull
+    private final Map<String, String> images;
+    @Nonnull
+    private final List<ProductVariation> productVariations;
+    private final long lastSync;
+    private final long lastFullSync;
+
+    public RemoteCache() {
+        orders = ImmutableList.of();
+        images = ImmutableMap.of();
+        productVariations = ImmutableList.of();
+        lastSync = 0;
+        lastFullSync = 0;
+    }
+
+    private RemoteCache(Data data) {
+        orders = data.getOrders();
+        images = data.getImages();
+        productVariations = data.getProductVariations();
+        lastSync = data.getLastSync();
+        lastFullSync = data.getLastFullSync();
+    }
+
+    @Nonnull
+    public static RemoteCache of(@Nonnull Data data) {
+        return new RemoteCache(data);
+    }
+
+    /**
+     * @return data consisting of this cache and the given user data
+     */
+    @Nonnull
+    public Data toData(@Nonnull UserData userData) {
+        return new Data(orders, images, productVariations, userData, lastSync, lastFullSync);
+    }
+
+    /**
+     * @return true if both caches contain the same data, cheap if the collections are shared
+     */
+    public boolean sameAs(@Nonnull RemoteCache other) {
+        return lastSync == other.lastSync &&
+                lastFullSync == other.lastFullSync &&
+                same(orders, other.orders) &&
+                same(images, other.images) &&
+                same(productVariations, other.productVariations);
+    }
+
+    private static boolean same(Object a, Object b) {
+        return a == b || a.equals(b);
+    }
+
+    @Nonnull
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    @Nonnull
+    public Map<String, String> getImages() {
+        return images;
+    }
+
+    @Nonnull
+    public List<ProductVariation> getProductVariations() {
+        return productVariations;
+    }
+
+    public long getLastSync() {
+        return lastSync;
+    }
+
+    public long getLastFullSync() {
+        return lastFullSync;
+    }
+}
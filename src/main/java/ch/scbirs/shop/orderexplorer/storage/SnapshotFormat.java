@@ -0,0 +1,71 @@
+package ch.scbirs.shop.orderexplorer.storage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * File format of the {@link RemoteCache}
+ */
+public enum SnapshotFormat {
+    /**
+     * Human readable, the default
+     */
+    JSON("json", new JsonFactory()),
+    /**
+     * Binary JSON, smaller and faster to parse
+     */
+    SMILE("sml", new SmileFactory());
+
+    private final String extension;
+    private final ObjectMapper mapper;
+
+    SnapshotFormat(String extension, JsonFactory factory) {
+        this.extension = extension;
+        mapper = new ObjectMapper(factory);
+    }
+
+    /**
+     * @return the file of this format for a file name without extension
+     */
+    @Nonnull
+    public Path file(@Nonnull Path base) {
+        return base.resolveSibling(base.getFileName() + "." + extension);
+    }
+
+    /**
+     * Reads the file through a plain stream, a memory mapping would keep the file locked on windows
+     * until it is garbage collected, failing the replace and delete of later saves
+     */
+    @Nonnull
+    public <T> T read(@Nonnull Path file, @Nonnull Class<T> type) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            return mapper.readValue(in, type);
+        }
+    }
+
+    public void write(@Nonnull Path file, @Nonnull Object value) throws IOException {
+        mapper.writeValue(file.toFile(), value);
+    }
+
+    /**
+     * @param name case insensitive name of the format
+     * @return the format, or JSON if there is none with this name
+     */
+    @Nonnull
+    public static SnapshotFormat parse(String name) {
+        for (SnapshotFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return JSON;
+    }
+}
@@ -71,24 +71,18 @@ public class DataUtil {
     /**
      * Returns the status of all products if all products have a single status.
      * If the status differs return null
+     * <p>
+     * The status is looked up in the {@link Data#getStatusIndex() status index} of the data.
      *
      * @param order
      * @param data
      * @return Status or Null
      */
     public static OrderStatus getOrderStatus(Order order, Data data) {
-        OrderStatus s = null;
-        if (order != null && data != null) {
-            for (Product p : order.getProducts()) {
-                Status status = data.getUserData().getProductData(p).getStatus();
-                if (s == null) {
-                    s = new OrderStatus(status.isPaid(), status.isInStock(), status.isDone());
-                } else {
-                    s = s.withStatus(status);
-                }
-            }
+        if (order == null || data == null) {
+            return null;
         }
-        return s;
+        return data.getStatusIndex().get(order);
     }
 
     public static class OrderStatus {
@@ -105,14 +99,6 @@ public class DataUtil {
             this.done = done;
         }
 
-        private OrderStatus withStatus(Status status) {
-            return new OrderStatus(
-                    (this.paid != null && this.paid == status.isPaid()) ? this.paid : null,
-                    (this.inStock != null && this.inStock == status.isInStock()) ? this.inStock : null,
-                    (this.done != null && this.done == status.isDone()) ? this.done : null
-            );
-        }
-
         public boolean isPaid() {
             return paid != null && paid;
         }
@@ -0,0 +1,111 @@
+package ch.scbirs.shop.orderexplorer.util;
+
+import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.Status;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import org.pcollections.HashTreePMap;
+import org.pcollections.PMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The aggregated {@link DataUtil.OrderStatus} of every order of a {@link Data} instance.
+ * <p>
+ * Kept by the data, see {@link Data#getStatusIndex()}. If only some products changed, e.g. after a product
+ * status was toggled, only the orders containing them are aggregated again, all other entries are shared.
+ */
+public class OrderStatusIndex {
+
+    private final Data data;
+    private final PMap<Integer, Entry> byOrderId;
+    /**
+     * Product (line item) id to the order containing it
+     */
+    private final Map<Integer, Order> orderByProductId;
+
+    public OrderStatusIndex(@Nonnull Data data) {
+        this.data = data;
+        Map<Integer, Entry> entries = new HashMap<>();
+        orderByProductId = new HashMap<>();
+        for (Order order : data.getOrders()) {
+            entries.put(order.getId(), new Entry(order, aggregate(order, data)));
+            for (Product p : order.getProducts()) {
+                orderByProductId.put(p.getId(), order);
+            }
+        }
+        byOrderId = HashTreePMap.from(entries);
+    }
+
+    private OrderStatusIndex(Data data, PMap<Integer, Entry> byOrderId, Map<Integer, Order> orderByProductId) {
+        this.data = data;
+        this.byOrderId = byOrderId;
+        this.orderByProductId = orderByProductId;
+    }
+
+    /**
+     * @param data              data with the same orders as this index
+     * @param changedProductIds the products whose user data changed
+     * @return the index for the data
+     */
+    @Nonnull
+    public OrderStatusIndex update(@Nonnull Data data, @Nonnull Set<Integer> changedProductIds) {
+        PMap<Integer, Entry> entries = byOrderId;
+        for (Integer id : changedProductIds) {
+            Order order = orderByProductId.get(id);
+            if (order != null) {
+                entries = entries.plus(order.getId(), new Entry(order, aggregate(order, data)));
+            }
+        }
+        return new OrderStatusIndex(data, entries, orderByProductId);
+    }
+
+    /**
+     * @return the status of all products if all products have a single status, null if the order has no products
+     */
+    @Nullable
+    public DataUtil.OrderStatus get(@Nonnull Order order) {
+        Entry entry = byOrderId.get(order.getId());
+        if (entry == null || entry.order != order) {
+            // Not an order of this data
+            return aggregate(order, data);
+        }
+        return entry.status;
+    }
+
+    @Nullable
+    private static DataUtil.OrderStatus aggregate(Order order, Data data) {
+        Boolean paid = null;
+        Boolean inStock = null;
+        Boolean done = null;
+        boolean first = true;
+        for (Product p : order.getProducts()) {
+            Status status = data.getUserData().getProductData(p).getStatus();
+            if (first) {
+                paid = status.isPaid();
+                inStock = status.isInStock();
+                done = status.isDone();
+                first = false;
+            } else {
+                paid = paid != null && paid == status.isPaid() ? paid : null;
+                inStock = inStock != null && inStock == status.isInStock() ? inStock : null;
+                done = done != null && done == status.isDone() ? done : null;
+            }
+        }
+        return first ? null : new DataUtil.OrderStatus(paid, inStock, done);
+    }
+
+    private static class Entry {
+        private final Order order;
+        private final DataUtil.OrderStatus status;
+
+        private Entry(Order order, DataUtil.OrderStatus status) {
+            this.order = order;
+            this.status = status;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ch.scbirs.shop.orderexplorer.version;
 
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
+import ch.scbirs.shop.orderexplorer.web.WebClient;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.zafarkhaja.semver.Version;
@@ -24,11 +25,14 @@ public class GithubReleaseQuery {
     static HttpUrl BASE_URL = Objects.requireNonNull(
             HttpUrl.parse("https://api.github.com/repos/")
     );
-    private final OkHttpClient client = new OkHttpClient();
+    private final OkHttpClient client;
+    private final ObjectMapper om;
     private final String user;
     private final String repo;
 
-    public GithubReleaseQuery(@Nonnull String user, @Nonnull String repo) {
+    public GithubReleaseQuery(@Nonnull WebClient web, @Nonnull String user, @Nonnull String repo) {
+        this.client = web.getClient();
+        this.om = web.getObjectMapper();
         this.user = Objects.requireNonNull(user);
         this.repo = Objects.requireNonNull(repo);
     }
@@ -45,12 +49,12 @@ public class GithubReleaseQuery {
             HttpUrl url = makeUrl().addPathSegment(PS_LATEST).build();
             Request request = makeRequest(url);
 
-            Response response = client.newCall(request).execute();
-            LOGGER.info("Got response");
-            ResponseBody body = checkResponse(response);
-
-            ObjectMapper om = new ObjectMapper();
-            JsonNode json = om.readTree(body.byteStream());
+            JsonNode json;
+            try (Response response = client.newCall(request).execute()) {
+                LOGGER.info("Got response");
+                ResponseBody body = checkResponse(response);
+                json = om.readTree(body.byteStream());
+            }
             GithubRelease githubRelease = GithubRelease.fromJson(json, user + "/" + repo);
             LOGGER.info("Found release " + githubRelease);
             return githubRelease;
@@ -16,11 +16,14 @@ public class CheckConnectionTask extends Task<Boolean> {
     private static final Logger LOGGER = LogUtil.get();
 
     private final UserSettings settings;
-    private final OkHttpClient client = new OkHttpClient();
+    private final OkHttpClient client;
+    private final ObjectMapper om;
 
-    public CheckConnectionTask(UserSettings settings) {
+    public CheckConnectionTask(WebClient web, UserSettings settings) {
 
         this.settings = settings;
+        client = web.getClient();
+        om = web.getObjectMapper();
     }
 
     @Override
@@ -35,13 +38,13 @@ public class CheckConnectionTask extends Task<Boolean> {
                     .build();
 
             Request request = new Request.Builder().url(url).build();
-            Response response = client.newCall(request).execute();
-
-            ObjectMapper om = new ObjectMapper();
-            if (response.body() == null) {
-                return false;
+            JsonNode json;
+            try (Response response = client.newCall(request).execute()) {
+                if (response.body() == null) {
+                    return false;
+                }
+                json = om.readTree(response.body().byteStream());
             }
-            JsonNode json = om.readTree(response.body().byteStream());
 
             String version = json.get("environment").get("wp_version").asText();
             LOGGER.info("Remote running Wordpress " + version);
@@ -0,0 +1,228 @@
+package ch.scbirs.shop.orderexplorer.web;
+
+import ch.scbirs.shop.orderexplorer.util.LogUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.MoreObjects;
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thumbnails on disk, stored under the hash of their url together with the validators
+ * (<code>ETag</code> and <code>Last-Modified</code>) needed to revalidate them with a conditional request.
+ * <p>
+ * The cache is bounded in size, the least recently used images are evicted by {@link #trim(Collection)}.
+ */
+public class ImageCache {
+
+    public static final long DEFAULT_MAX_SIZE = 50 * 1024 * 1024;
+
+    private static final Logger LOGGER = LogUtil.get();
+
+    private static final String FOLDER = "images";
+    private static final String INDEX_FILE = "index.json";
+
+    private final Path root;
+    private final Path folder;
+    private final long maxSize;
+    private final ObjectMapper om;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private ImageCache(Path root, long maxSize, ObjectMapper om) {
+        this.root = root;
+        this.folder = root.resolve(FOLDER);
+        this.maxSize = maxSize;
+        this.om = om;
+    }
+
+    /**
+     * Opens the cache in the <code>images</code> folder below <code>root</code>.
+     * File names returned by the cache are relative to <code>root</code>.
+     */
+    @Nonnull
+    public static ImageCache open(Path root, long maxSize, ObjectMapper om) throws IOException {
+        ImageCache cache = new ImageCache(root, maxSize, om);
+        Files.createDirectories(cache.folder);
+
+        Path index = cache.folder.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            try {
+                Map<String, Entry> stored = om.readValue(index.toFile(), new TypeReference<Map<String, Entry>>() {
+                });
+                stored.forEach((url, entry) -> {
+                    if (Files.exists(root.resolve(entry.getFilename()))) {
+                        cache.entries.put(url, entry);
+                    }
+                });
+            } catch (IOException e) {
+                LOGGER.warn("Can't read image cache index, starting with an empty cache", e);
+            }
+        }
+        LOGGER.info("Opened image cache with " + cache.entries.size() + " images");
+        return cache;
+    }
+
+    /**
+     * @return the file name for the image at this url, relative to the root folder
+     */
+    @Nonnull
+    public String getFilename(String url) {
+        return FOLDER + "/" + Hashing.sha256().hashString(url, StandardCharsets.UTF_8) + ".jpg";
+    }
+
+    @Nonnull
+    public Path getPath(String url) {
+        return root.resolve(getFilename(url));
+    }
+
+    /**
+     * @return the cached entry for this url or null if the image is not cached
+     */
+    @Nullable
+    public Entry get(String url) {
+        return entries.get(url);
+    }
+
+    /**
+     * Marks a cached image as still valid, e.g. after the server answered with <code>304 Not Modified</code>
+     */
+    public void hit(String url) {
+        hits.incrementAndGet();
+        entries.computeIfPresent(url, (u, e) -> e.withLastAccess(System.currentTimeMillis()));
+    }
+
+    /**
+     * Adds a newly downloaded image that has been written to {@link #getPath(String)}
+     */
+    public void put(String url, @Nullable String etag, @Nullable String lastModified) throws IOException {
+        misses.incrementAndGet();
+        long size = Files.size(getPath(url));
+        entries.put(url, new Entry(getFilename(url), etag, lastModified, size, System.currentTimeMillis()));
+    }
+
+    /**
+     * Evicts the least recently used images until the cache fits into its maximum size
+     *
+     * @param inUse file names that must not be evicted
+     */
+    public void trim(Collection<String> inUse) {
+        Set<String> keep = new HashSet<>(inUse);
+        long size = entries.values().stream().mapToLong(Entry::getSize).sum();
+
+        List<Map.Entry<String, Entry>> lru = new ArrayList<>(entries.entrySet());
+        lru.sort(Comparator.comparingLong(e -> e.getValue().getLastAccess()));
+
+        int evicted = 0;
+        for (Map.Entry<String, Entry> e : lru) {
+            if (size <= maxSize) {
+                break;
+            }
+            if (keep.contains(e.getValue().getFilename())) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(root.resolve(e.getValue().getFilename()));
+                entries.remove(e.getKey());
+                size -= e.getValue().getSize();
+                evicted += 1;
+            } catch (IOException ex) {
+                LOGGER.warn("Can't evict image " + e.getValue().getFilename(), ex);
+            }
+        }
+        LOGGER.info("Image cache: " + hits.get() + " hits, " + misses.get() + " misses, " + evicted + " evicted, "
+                + entries.size() + " images using " + size / 1024 + " KiB");
+    }
+
+    public void save() throws IOException {
+        om.writeValue(folder.resolve(INDEX_FILE).toFile(), new HashMap<>(entries));
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public static class Entry {
+
+        @Nonnull
+        private final String filename;
+        @Nullable
+        private final String etag;
+        @Nullable
+        private final String lastModified;
+        private final long size;
+        private final long lastAccess;
+
+        public Entry() {
+            filename = "";
+            etag = null;
+            lastModified = null;
+            size = 0;
+            lastAccess = 0;
+        }
+
+        public Entry(@Nonnull String filename, @Nullable String etag, @Nullable String lastModified, long size,
+                     long lastAccess) {
+            this.filename = filename;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+
+        @Nonnull
+        public Entry withLastAccess(long lastAccess) {
+            return new Entry(filename, etag, lastModified, size, lastAccess);
+        }
+
+        @Nonnull
+        public String getFilename() {
+            return filename;
+        }
+
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        @Nullable
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastAccess() {
+            return lastAccess;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("filename", filename)
+                    .add("etag", etag)
+                    .add("lastModified", lastModified)
+                    .add("size", size)
+                    .add("lastAccess", lastAccess)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ch.scbirs.shop.orderexplorer.web;
+
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Image urls of products and variations, collected from the product catalogue
+ * so they don't have to be requested again for every ordered product.
+ */
+public class ImageCatalogue {
+
+    private final Map<Integer, String> products = new ConcurrentHashMap<>();
+    private final Map<String, String> variations = new ConcurrentHashMap<>();
+
+    private static String key(int productId, int variationId) {
+        return productId + "-" + variationId;
+    }
+
+    private static boolean isPlaceholder(@Nullable String url) {
+        return url == null || url.isEmpty() || url.contains("placeholder");
+    }
+
+    public void putProduct(int productId, @Nullable String url) {
+        if (url != null && !url.isEmpty()) {
+            products.put(productId, url);
+        }
+    }
+
+    public void putVariation(int productId, int variationId, @Nullable String url) {
+        if (url != null) {
+            variations.put(key(productId, variationId), url);
+        }
+    }
+
+    public boolean hasVariation(Product product) {
+        return variations.containsKey(key(product.getProductId(), product.getVariationId()));
+    }
+
+    /**
+     * @return the image of the variation, or the image of the product if the variation
+     * has none or only a placeholder. null if neither is known.
+     */
+    @Nullable
+    public String get(Product product) {
+        String url = variations.get(key(product.getProductId(), product.getVariationId()));
+        if (isPlaceholder(url)) {
+            url = products.get(product.getProductId());
+        }
+        return url;
+    }
+}
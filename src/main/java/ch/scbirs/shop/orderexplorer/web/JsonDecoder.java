@@ -0,0 +1,99 @@
+package ch.scbirs.shop.orderexplorer.web;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Base for decoders that read the WooCommerce api responses token by token,
+ * instead of building a full tree. Fields that are not read are skipped.
+ */
+public abstract class JsonDecoder {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    protected JsonParser createParser(InputStream in) throws IOException {
+        return FACTORY.createParser(in);
+    }
+
+    /**
+     * Moves the parser to the start of the top level array
+     *
+     * @throws IOException if the response is not an array, e.g. an error object
+     */
+    protected void startArray(JsonParser p) throws IOException {
+        JsonToken token = p.nextToken();
+        if (token != JsonToken.START_ARRAY) {
+            throw new IOException("Expected a json array but got " + token + " at " + p.getCurrentLocation());
+        }
+    }
+
+    /**
+     * Moves the parser to the next object in the current array
+     *
+     * @return false if the end of the array is reached
+     */
+    protected boolean nextObject(JsonParser p) throws IOException {
+        JsonToken token = p.nextToken();
+        while (token != null && token != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                return true;
+            }
+            p.skipChildren();
+            token = p.nextToken();
+        }
+        return false;
+    }
+
+    /**
+     * Moves the parser to the value of the next field of the current object
+     *
+     * @return the field name or null if the end of the object is reached
+     */
+    protected String nextField(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.FIELD_NAME) {
+            return null;
+        }
+        String name = p.getCurrentName();
+        p.nextToken();
+        return name;
+    }
+
+    /**
+     * Checks that the current value is an object, skips it otherwise (e.g. if it is null)
+     */
+    protected boolean isObject(JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.START_OBJECT) {
+            return true;
+        }
+        p.skipChildren();
+        return false;
+    }
+
+    /**
+     * Checks that the current value is an array, skips it otherwise (e.g. if it is null)
+     */
+    protected boolean isArray(JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.START_ARRAY) {
+            return true;
+        }
+        p.skipChildren();
+        return false;
+    }
+
+    /**
+     * Reads the current value as text. Objects, arrays and null are read as empty string.
+     */
+    @Nonnull
+    protected String text(JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.START_OBJECT || p.currentToken() == JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return "";
+        }
+        return p.getValueAsString("");
+    }
+}
@@ -0,0 +1,180 @@
+package ch.scbirs.shop.orderexplorer.web;
+
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes a page of the <code>orders</code> endpoint
+ */
+public class OrderDecoder extends JsonDecoder {
+
+    public List<Order> decode(InputStream in) throws IOException {
+        List<Order> orders = new ArrayList<>();
+        try (JsonParser p = createParser(in)) {
+            startArray(p);
+            while (nextObject(p)) {
+                orders.add(readOrder(p));
+            }
+        }
+        return orders;
+    }
+
+    private Order readOrder(JsonParser p) throws IOException {
+        Order.Builder b = new Order.Builder();
+        String field;
+        while ((field = nextField(p)) != null) {
+            switch (field) {
+                case "id":
+                    b.setId(p.getValueAsInt());
+                    break;
+                case "status":
+                    b.setStatus(text(p));
+                    break;
+                case "customer_note":
+                    b.setNote(text(p));
+                    break;
+                case "total":
+                    b.setTotal(text(p));
+                    break;
+                case "billing":
+                    readBilling(p, b);
+                    break;
+                case "shipping":
+                    readShipping(p, b);
+                    break;
+                case "line_items":
+                    readLineItems(p, b);
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        return b.build();
+    }
+
+    private void readBilling(JsonParser p, Order.Builder b) throws IOException {
+        if (!isObject(p)) {
+            return;
+        }
+        String field;
+        while ((field = nextField(p)) != null) {
+            switch (field) {
+                case "first_name":
+                    b.setFirstName(text(p));
+                    break;
+                case "last_name":
+                    b.setLastName(text(p));
+                    break;
+                case "email":
+                    b.setEmail(text(p));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+    }
+
+    private void readShipping(JsonParser p, Order.Builder b) throws IOException {
+        if (!isObject(p)) {
+            return;
+        }
+        String field;
+        while ((field = nextField(p)) != null) {
+            switch (field) {
+                case "first_name":
+                    b.setShippingFirstName(text(p));
+                    break;
+                case "last_name":
+                    b.setShippingLastName(text(p));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+    }
+
+    private void readLineItems(JsonParser p, Order.Builder b) throws IOException {
+        if (!isArray(p)) {
+            return;
+        }
+        while (nextObject(p)) {
+            b.addProduct(readProduct(p));
+        }
+    }
+
+    private Product readProduct(JsonParser p) throws IOException {
+        int id = 0;
+        int quantity = 0;
+        String name = "";
+        String sku = "";
+        double price = 0;
+        int productId = 0;
+        int variationId = 0;
+        Map<String, String> meta = new HashMap<>();
+
+        String field;
+        while ((field = nextField(p)) != null) {
+            switch (field) {
+                case "id":
+                    id = p.getValueAsInt();
+                    break;
+                case "quantity":
+                    quantity = p.getValueAsInt();
+                    break;
+                case "name":
+                    name = text(p);
+                    break;
+                case "sku":
+                    sku = text(p);
+                    break;
+                case "price":
+                    price = p.getValueAsDouble();
+                    break;
+                case "product_id":
+                    productId = p.getValueAsInt();
+                    break;
+                case "variation_id":
+                    variationId = p.getValueAsInt();
+                    break;
+                case "meta_data":
+                    readMeta(p, meta);
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        return new Product(id, quantity, name, meta, price, sku, productId, variationId);
+    }
+
+    private void readMeta(JsonParser p, Map<String, String> meta) throws IOException {
+        if (!isArray(p)) {
+            return;
+        }
+        while (nextObject(p)) {
+            String key = "";
+            String value = "";
+            String field;
+            while ((field = nextField(p)) != null) {
+                switch (field) {
+                    case "key":
+                        key = text(p);
+                        break;
+                    case "value":
+                        value = text(p);
+                        break;
+                    default:
+                        p.skipChildren();
+                }
+            }
+            meta.put(key, value);
+        }
+    }
+}
@@ -2,116 +2,256 @@ package ch.scbirs.shop.orderexplorer.web;
 
 import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
 import ch.scbirs.shop.orderexplorer.model.remote.Order;
-import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import ch.scbirs.shop.orderexplorer.util.LogUtil;
 import ch.scbirs.shop.orderexplorer.util.SteppedTask;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
+/**
+ * Downloads all open orders.
+ * <p>
+ * The first page is loaded synchronously to learn the page count from the
+ * <code>x-wp-totalpages</code> header. All remaining pages are then requested concurrently
+ * and handed out in page order, one page per {@link #doStep()}.
+ * If the header is missing, the <code>next</code> link header is followed instead.
+ * <p>
+ * If a modification date is given, only orders modified after that date are requested. Orders that
+ * have been closed since then are reported through {@link #getClosedOrderIds()}. Shops without the v3 api
+ * answer that request with 404 or 400, then all orders are loaded instead.
+ */
 public class OrderFetcher implements SteppedTask {
 
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final DateTimeFormatter GMT_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")
+            .withZone(ZoneOffset.UTC);
+
+    private static final Logger LOGGER = LogUtil.get();
 
     private final List<String> statusFilter = Arrays.asList("completed", "cancelled", "refunded", "failed");
 
-    private final Queue<HttpUrl> queue = new ArrayDeque<>();
-    private final OkHttpClient client = new OkHttpClient();
-    private List<Order> orders;
+    private final Queue<Future<Page>> pending = new ArrayDeque<>();
+    private final OkHttpClient client;
+    private final OrderDecoder decoder = new OrderDecoder();
+    private final UserSettings settings;
+    private final int pageSize;
+    private final int parallelism;
+    private final List<Order> orders;
+    private final Set<Integer> closedOrderIds = new HashSet<>();
+
+    private Consumer<List<Order>> pageListener = orders -> {
+    };
+    private ExecutorService executor;
+    private HttpUrl baseUrl;
+    private HttpUrl next;
+    private boolean incremental;
 
     private int currentPage = 0;
     private int maxPages = 0;
 
-    public OrderFetcher(UserSettings settings) {
+    public OrderFetcher(WebClient web, UserSettings settings) {
+        this(web, settings, null);
+    }
+
+    public OrderFetcher(WebClient web, UserSettings settings, @Nullable Instant modifiedAfter) {
+        this(web, settings, modifiedAfter, MAX_PAGE_SIZE, settings.getMaxConnections());
+    }
+
+    public OrderFetcher(WebClient web, UserSettings settings, @Nullable Instant modifiedAfter, int pageSize,
+                        int parallelism) {
+        Preconditions.checkArgument(pageSize > 0 && pageSize <= MAX_PAGE_SIZE,
+                "Page size must be between 1 and %s", MAX_PAGE_SIZE);
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be at least 1");
+        this.settings = settings;
+        this.pageSize = pageSize;
+        this.parallelism = parallelism;
+        client = web.getClient();
         orders = new ArrayList<>();
-        HttpUrl url = new HttpUrl.Builder()
+        incremental = modifiedAfter != null;
+        baseUrl = baseUrl(modifiedAfter);
+        next = pageUrl(1);
+    }
+
+    private HttpUrl baseUrl(@Nullable Instant modifiedAfter) {
+        HttpUrl.Builder builder = new HttpUrl.Builder()
                 .scheme("https")
-                .host(settings.getHost())
-                .addPathSegments("wp-json/wc/v2/orders")
+                .host(settings.getHost());
+        if (modifiedAfter == null) {
+            builder.addPathSegments("wp-json/wc/v2/orders");
+        } else {
+            // modified_after is only understood by the v3 api
+            builder.addPathSegments("wp-json/wc/v3/orders")
+                    .addQueryParameter("modified_after", GMT_FORMATTER.format(modifiedAfter))
+                    .addQueryParameter("dates_are_gmt", "true");
+        }
+        return builder
                 .addQueryParameter("consumer_key", settings.getConsumerKey())
                 .addQueryParameter("consumer_secret", settings.getConsumerSecret())
+                .addQueryParameter("per_page", String.valueOf(pageSize))
                 .build();
-        queue.add(url);
     }
 
     @Override
     public void doStep() throws IOException {
-        HttpUrl url = queue.poll();
+        Page page;
+        if (!pending.isEmpty()) {
+            page = await(pending.poll());
+        } else {
+            HttpUrl url = next;
+            next = null;
+            try {
+                page = fetchPage(url);
+            } catch (UnsuccessfulRequestException e) {
+                if (!incremental || currentPage > 0 || (e.code != 404 && e.code != 400)) {
+                    throw e;
+                }
+                LOGGER.warn("Shop doesn't support incremental syncs (" + e.code + "), loading all orders");
+                incremental = false;
+                baseUrl = baseUrl(null);
+                page = fetchPage(pageUrl(1));
+            }
+
+            if (currentPage == 0 && page.totalPages > 1) {
+                fanOut(page.totalPages);
+            } else {
+                next = page.next;
+            }
+        }
 
         currentPage += 1;
+        if (page.totalPages > 0) {
+            maxPages = Math.max(maxPages, page.totalPages);
+        }
+        orders.addAll(page.orders);
+        closedOrderIds.addAll(page.closedOrderIds);
+        pageListener.accept(Collections.unmodifiableList(page.orders));
+    }
+
+    private void fanOut(int totalPages) {
+        LOGGER.info("Loading " + (totalPages - 1) + " remaining order pages with " + parallelism + " threads");
+        executor = Executors.newFixedThreadPool(Math.min(parallelism, totalPages - 1),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("order-fetcher-%d").build());
+        for (int i = 2; i <= totalPages; i++) {
+            HttpUrl url = pageUrl(i);
+            pending.add(executor.submit(() -> fetchPage(url)));
+        }
+        // No further tasks, let the threads die once the queue is drained
+        executor.shutdown();
+    }
+
+    private Page await(Future<Page> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new InterruptedIOException("Interrupted while waiting for order page");
+        } catch (ExecutionException e) {
+            abort();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to load order page", cause);
+        }
+    }
+
+    private void abort() {
+        pending.forEach(f -> f.cancel(true));
+        pending.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private HttpUrl pageUrl(int page) {
+        return baseUrl.newBuilder()
+                .setQueryParameter("page", String.valueOf(page))
+                .build();
+    }
+
+    private Page fetchPage(HttpUrl url) throws IOException {
+        LOGGER.info("Load orders from url " + WebClient.redact(url));
 
         Request request = new Request.Builder().url(url).build();
-        Response response = client.newCall(request).execute();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new UnsuccessfulRequestException(response.code(), url);
+            }
+            int totalPages = 0;
+            String header = response.header("x-wp-totalpages");
+            if (header != null) {
+                totalPages = Integer.parseInt(header);
+            }
+
+            List<Order> decoded = decoder.decode(response.body().byteStream());
 
-        String totalPages = response.header("x-wp-totalpages");
-        if (totalPages != null) {
-            maxPages = Integer.parseInt(totalPages);
+            LinkHeader link = new LinkHeader(response.headers("link"));
+            HttpUrl nextUrl = link.get("next").map(HttpUrl::get).orElse(null);
+
+            Page page = new Page(totalPages, nextUrl);
+            handleAnswer(decoded, page);
+            return page;
         }
+    }
 
-        ObjectMapper om = new ObjectMapper();
-        JsonNode jsonNode = om.readTree(response.body().byteStream());
-
-        handleAnswer(jsonNode);
-
-        LinkHeader link = new LinkHeader(response.headers("link"));
-        link.get("next").ifPresent(l -> queue.add(HttpUrl.get(l)));
-    }
-
-    private void handleAnswer(JsonNode jsonNode) {
-        jsonNode.forEach((order) -> {
-            JsonNode billing = order.get("billing");
-            JsonNode shipping = order.get("shipping");
-
-            Order.Builder b = new Order.Builder()
-                    .setId(order.get("id").asInt())
-                    .setStatus(order.get("status").asText())
-                    .setNote(order.get("customer_note").asText())
-                    .setFirstName(billing.get("first_name").asText())
-                    .setLastName(billing.get("last_name").asText())
-                    .setShippingFirstName(shipping.get("first_name").asText())
-                    .setShippingLastName(shipping.get("last_name").asText())
-                    .setEmail(billing.get("email").asText())
-                    .setTotal(order.get("total").asText());
-
-            order.get("line_items").forEach((product) -> {
-                int id = product.get("id").asInt();
-                int quantity = product.get("quantity").asInt();
-                String name = product.get("name").asText();
-                String sku = product.get("sku").asText();
-                double price = product.get("price").asDouble();
-                int productId = product.get("product_id").asInt();
-                int variationId = product.get("variation_id").asInt();
-
-                Map<String, String> meta = new HashMap<>();
-
-                product.get("meta_data").forEach((size) -> {
-                    meta.put(size.get("key").asText(), size.get("value").asText());
-                });
-                b.addProduct(new Product(id, quantity, name, meta, price, sku, productId, variationId));
-            });
-
-            Order o = b.build();
+    private void handleAnswer(List<Order> decoded, Page page) {
+        for (Order o : decoded) {
             if (!statusFilter.contains(o.getStatus())) {
-                handleOrder(o);
+                page.orders.add(o);
+            } else {
+                page.closedOrderIds.add(o.getId());
             }
-        });
+        }
     }
 
-    private void handleOrder(Order order) {
-        orders.add(order);
+    /**
+     * @param pageListener called with the open orders of every page, as soon as the page has been loaded
+     */
+    public void setPageListener(Consumer<List<Order>> pageListener) {
+        this.pageListener = pageListener;
     }
 
     public List<Order> getOrders() {
         return Collections.unmodifiableList(orders);
     }
 
+    /**
+     * @return ids of all fetched orders that were skipped because of their status
+     */
+    public Set<Integer> getClosedOrderIds() {
+        return Collections.unmodifiableSet(closedOrderIds);
+    }
+
+    /**
+     * @return false if no modification date was given or the shop didn't support it,
+     * then all orders were loaded
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
     @Override
     public boolean isDone() {
-        return queue.isEmpty();
+        return pending.isEmpty() && next == null;
     }
 
     @Override
@@ -124,4 +264,25 @@ public class OrderFetcher implements SteppedTask {
         return maxPages;
     }
 
+    private static class Page {
+        private final List<Order> orders = new ArrayList<>();
+        private final Set<Integer> closedOrderIds = new HashSet<>();
+        private final int totalPages;
+        private final HttpUrl next;
+
+        private Page(int totalPages, HttpUrl next) {
+            this.totalPages = totalPages;
+            this.next = next;
+        }
+    }
+
+    private static class UnsuccessfulRequestException extends IOException {
+        private final int code;
+
+        private UnsuccessfulRequestException(int code, HttpUrl url) {
+            super("Unsuccessful request " + code + " for " + WebClient.redact(url));
+            this.code = code;
+        }
+    }
+
 }
@@ -0,0 +1,79 @@
+package ch.scbirs.shop.orderexplorer.web;
+
+import ch.scbirs.shop.orderexplorer.util.LogUtil;
+import ch.scbirs.shop.orderexplorer.util.SteppedTask;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One part of a sync that runs a {@link SteppedTask} to completion.
+ * Progress and duration can be read from other threads while the phase is running.
+ */
+public class Phase {
+
+    private static final Logger LOGGER = LogUtil.get();
+
+    private final String name;
+    private final SteppedTask task;
+
+    private volatile double progress = 0;
+    private volatile long start = 0;
+    private volatile long end = 0;
+
+    public Phase(String name, SteppedTask task) {
+        this.name = name;
+        this.task = task;
+    }
+
+    /**
+     * Runs the task until it is done or cancelled
+     *
+     * @param cancelled  checked before every step
+     * @param onProgress called after every step
+     */
+    public void run(BooleanSupplier cancelled, Runnable onProgress) throws Exception {
+        LOGGER.info("Starting phase " + name);
+        start = System.nanoTime();
+        try {
+            while (!task.isDone() && !cancelled.getAsBoolean()) {
+                task.doStep();
+                int max = task.maxProgress();
+                progress = task.isDone() ? 1 : max <= 0 ? 0 : Math.min(1, (double) task.currentProgress() / max);
+                onProgress.run();
+            }
+        } finally {
+            end = System.nanoTime();
+            LOGGER.info("Phase " + name + " finished after " + getDuration().toMillis() + " ms");
+        }
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return progress between 0 and 1
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    public boolean isRunning() {
+        return start != 0 && end == 0;
+    }
+
+    /**
+     * @return how long the phase has been running, zero if it hasn't started yet
+     */
+    @Nonnull
+    public Duration getDuration() {
+        if (start == 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos((end == 0 ? System.nanoTime() : end) - start);
+    }
+}
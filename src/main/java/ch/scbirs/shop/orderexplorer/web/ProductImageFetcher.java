@@ -5,25 +5,48 @@ import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
 import ch.scbirs.shop.orderexplorer.model.remote.Product;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
 import ch.scbirs.shop.orderexplorer.util.SteppedTask;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Preconditions;
+import ch.scbirs.shop.orderexplorer.web.products.ProductDecoder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.Logger;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Downloads a thumbnail for every product.
+ * <p>
+ * Every image passes three stages, each running on its own bounded thread pool:
+ * resolving the image url, downloading the image and scaling it.
+ * Image urls are taken from the {@link ImageCatalogue}, which is filled while the product catalogue loads.
+ * Products whose url is already known are downloaded right away, the others wait until
+ * {@link #catalogueComplete()} and are only then resolved once per parent product, using the paged
+ * variations list and the product itself.
+ * Only a bounded number of images is in the pipeline at once. Every {@link #doStep()}
+ * waits for one image to leave the pipeline. Failing images are logged and skipped.
+ * <p>
+ * Images already in the {@link ImageCache} are revalidated with a conditional request and only
+ * downloaded and scaled again if they changed. Every url is downloaded once, products sharing an image
+ * wait for the same download.
+ * <p>
+ * Products can be added with {@link #add(Collection)} from any thread while the images are loading,
+ * {@link #complete()} signals that no more products follow.
+ */
 public class ProductImageFetcher implements SteppedTask {
 
     private static final Logger LOGGER = LogUtil.get();
@@ -31,145 +54,414 @@ public class ProductImageFetcher implements SteppedTask {
     private static final int MAX_IMAGE_HEIGHT = 120;
     private static final int MAX_IMAGE_WIDTH = 120;
 
-    private final Deque<Product> products;
-    private final Path folder;
-    private final OkHttpClient client = new OkHttpClient();
-    private final int maxProgress;
+    /**
+     * Marks the end of the input in {@link #input}
+     */
+    private static final List<Product> END = new ArrayList<>();
+    /**
+     * Marks the end of the product catalogue in {@link #input}
+     */
+    private static final List<Product> CATALOGUE_END = new ArrayList<>();
+
+    private final BlockingQueue<List<Product>> input = new LinkedBlockingQueue<>();
+    private final Set<Pair<Integer, Integer>> seen = new HashSet<>();
+    private final Deque<List<Product>> groups = new ArrayDeque<>();
+    /**
+     * Groups with unknown urls, waiting for the product catalogue
+     */
+    private final Deque<List<Product>> waiting = new ArrayDeque<>();
+    private final ImageCache cache;
+    private final OkHttpClient client;
+    private final ImageCatalogue catalogue;
+    private final ProductDecoder decoder;
     private final UserSettings settings;
 
+    private final ExecutorService resolvePool;
+    private final ExecutorService downloadPool;
+    private final ExecutorService scalePool;
+    private final BlockingQueue<Result> finished = new LinkedBlockingQueue<>();
+    private final int maxInFlight;
+
     private final Map<String, String> output = new HashMap<>();
+    /**
+     * Image url to the cache filename of the downloaded and scaled image
+     */
+    private final ConcurrentMap<String, CompletableFuture<String>> images = new ConcurrentHashMap<>();
+    /**
+     * Cache filenames of the images that were written again because they changed
+     */
+    private final Set<String> replaced = ConcurrentHashMap.newKeySet();
+    /**
+     * Requests per parent product id, a product appears on many order pages but is only requested once
+     */
+    private final ConcurrentMap<Integer, CompletableFuture<Void>> productRequests = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, CompletableFuture<Void>> variationRequests = new ConcurrentHashMap<>();
+
+    private boolean complete = false;
+    private boolean catalogueLoaded = false;
+    private int inFlight = 0;
+    private int progress = 0;
+    private int maxProgress = 0;
+    private int failed = 0;
+
+    public ProductImageFetcher(WebClient web, ImageCache cache, UserSettings settings, ImageCatalogue catalogue) {
+        this(web, cache, settings, catalogue, settings.getMaxConnections(), Runtime.getRuntime().availableProcessors());
+    }
 
-    private Product currentProduct = null;
-    private String currentUrl = null;
+    public ProductImageFetcher(WebClient web, ImageCache cache, UserSettings settings, ImageCatalogue catalogue,
+                               int networkConcurrency, int scaleConcurrency) {
+        this.cache = cache;
+        this.settings = settings;
+        this.catalogue = catalogue;
+        decoder = new ProductDecoder(catalogue);
+        client = web.getClient();
+
+        resolvePool = pool("image-resolve-%d", networkConcurrency);
+        downloadPool = pool("image-download-%d", networkConcurrency);
+        scalePool = pool("image-scale-%d", scaleConcurrency);
+        maxInFlight = 2 * networkConcurrency + scaleConcurrency;
+    }
 
-    public ProductImageFetcher(Set<Product> products, Path folder, UserSettings settings) {
+    private static ExecutorService pool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name).build());
+    }
 
-        products = dedupe(products);
+    /**
+     * Queues the images of these products. Can be called from any thread.
+     */
+    public void add(Collection<Product> products) {
+        input.add(new ArrayList<>(products));
+    }
 
-        this.products = new ArrayDeque<>(products);
-        this.folder = folder;
-        maxProgress = products.size() * 2;
-        this.settings = settings;
+    /**
+     * Signals that no more products will be added. Can be called from any thread.
+     */
+    public void complete() {
+        input.add(END);
+    }
+
+    /**
+     * Signals that the product catalogue is loaded or failed to load, all urls not in the
+     * {@link ImageCatalogue} by now have to be requested. Can be called from any thread.
+     */
+    public void catalogueComplete() {
+        input.add(CATALOGUE_END);
     }
 
-    private Set<Product> dedupe(Set<Product> products) {
-        Map<Pair<Integer, Integer>, Product> map = new HashMap<>();
-        for (Product p : products) {
-            map.put(Pair.of(p.getProductId(), p.getVariationId()), p);
+    private void accept(List<Product> batch) {
+        if (batch == END) {
+            complete = true;
+            return;
+        }
+        if (batch == CATALOGUE_END) {
+            catalogueLoaded = true;
+            groups.addAll(waiting);
+            waiting.clear();
+            return;
+        }
+        // Group new products by parent product, so their urls are resolved together
+        Map<Integer, List<Product>> byParent = new LinkedHashMap<>();
+        for (Product p : batch) {
+            if (seen.add(Pair.of(p.getProductId(), p.getVariationId()))) {
+                byParent.computeIfAbsent(p.getProductId(), id -> new ArrayList<>()).add(p);
+                maxProgress += 1;
+            }
         }
-        return new HashSet<>(map.values());
+        groups.addAll(byParent.values());
     }
 
     @Override
     public void doStep() throws IOException {
-        if (currentUrl == null) {
-            fetchNextUrl();
-        } else {
-            downloadImage();
+        boolean succeeded = false;
+        try {
+            step();
+            succeeded = true;
+        } finally {
+            if (!succeeded || isDone()) {
+                shutdown();
+            }
         }
     }
 
-    private void downloadImage() throws IOException {
-
-        String filename = FilenameUtils.getBaseName(currentUrl) + ".jpg";
-
-        Path o = folder.resolve(filename);
+    private void step() throws IOException {
+        try {
+            List<Product> batch;
+            while ((batch = input.poll()) != null) {
+                accept(batch);
+            }
+            // Nothing to wait for, block until more products arrive
+            while ((!complete || !waiting.isEmpty()) && inFlight == 0 && groups.isEmpty()) {
+                accept(input.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for products");
+        }
+        if (isDone()) {
+            finish();
+            return;
+        }
 
-        if (!Files.exists(o)) {
-            HttpUrl url = HttpUrl.parse(currentUrl);
-            Request request = new Request.Builder().url(url).build();
-            try (Response response = client.newCall(request).execute()) {
+        while (inFlight < maxInFlight && !groups.isEmpty()) {
+            List<Product> group = groups.poll();
+            if (catalogueLoaded || group.stream().allMatch(this::isKnown)) {
+                submit(group);
+            } else {
+                waiting.add(group);
+            }
+        }
+        if (inFlight == 0) {
+            // Everything is waiting for the catalogue
+            return;
+        }
 
-                BufferedImage img = ImageIO.read(response.body().byteStream());
-                BufferedImage scaled = scaleImage(img);
+        Result result;
+        try {
+            result = finished.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for images");
+        }
+        inFlight -= 1;
+        progress += 1;
 
-                ImageIO.write(scaled, "jpg", o.toFile());
-            }
+        if (result.filename != null) {
+            output.put(Data.getImageKeyForProduct(result.product), result.filename);
         } else {
-            LOGGER.info("Skipping file " + o);
+            failed += 1;
+            LOGGER.warn("Can't load image for product " + result.product.getName(), result.error);
         }
-        output.put(Data.getImageKeyForProduct(currentProduct), filename);
 
-        currentUrl = null;
-        currentProduct = null;
+        if (isDone()) {
+            finish();
+        }
     }
 
-    private BufferedImage scaleImage(BufferedImage img) {
-        Image scaled = img.getScaledInstance(MAX_IMAGE_WIDTH, MAX_IMAGE_HEIGHT, Image.SCALE_SMOOTH);
-        BufferedImage out = new BufferedImage(MAX_IMAGE_WIDTH, MAX_IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private void finish() {
+        LOGGER.info("Loaded " + output.size() + " images (" + cache.getHits() + " unchanged, "
+                + cache.getMisses() + " downloaded), " + failed + " failed");
+    }
 
-        Graphics2D g = out.createGraphics();
-        g.drawImage(scaled, 0, 0, null);
-        g.dispose();
+    /**
+     * Submits all products with the same parent product, so their urls are only resolved once
+     */
+    private void submit(List<Product> group) {
+        inFlight += group.size();
+        CompletableFuture<Void> resolved = CompletableFuture.runAsync(() -> resolveGroup(group), resolvePool);
+        for (Product product : group) {
+            resolved.thenApply(v -> resolve(product))
+                    .thenCompose(this::image)
+                    .whenComplete((filename, ex) -> finished.add(new Result(product, filename, ex)));
+        }
+    }
 
-        return out;
+    private CompletableFuture<String> image(String url) {
+        return images.computeIfAbsent(url, u -> CompletableFuture
+                .supplyAsync(() -> download(new PendingImage(u)), downloadPool)
+                .thenApplyAsync(this::scale, scalePool));
+    }
+
+    /**
+     * Stops all threads, called when the fetcher is done or failed and when the sync is cancelled
+     */
+    public void shutdown() {
+        resolvePool.shutdownNow();
+        downloadPool.shutdownNow();
+        scalePool.shutdownNow();
+    }
+
+    private boolean isKnown(Product p) {
+        return (p.getVariationId() == 0 || catalogue.hasVariation(p)) && catalogue.get(p) != null;
     }
 
-    private void fetchNextUrl() throws IOException {
-        Product product = products.poll();
-        Preconditions.checkNotNull(product);
+    private void resolveGroup(List<Product> group) {
+        int productId = group.get(0).getProductId();
+        try {
+            if (group.stream().anyMatch(p -> p.getVariationId() != 0 && !catalogue.hasVariation(p))) {
+                try {
+                    once(variationRequests, productId, this::fetchVariations);
+                } catch (IOException e) {
+                    LOGGER.warn("Can't load variations of product " + productId + ", using the product image", e);
+                }
+            }
+            if (group.stream().anyMatch(p -> catalogue.get(p) == null)) {
+                once(productRequests, productId, this::fetchProduct);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        String url = fetchNextUrlFromVariation(product);
+    private String resolve(Product product) {
+        String url = catalogue.get(product);
+        if (url == null) {
+            throw new UncheckedIOException(new IOException("No image for product " + product.getProductId()));
+        }
+        LOGGER.info("Found url " + url);
+        return url;
+    }
 
-        if (url == null || url.contains("placeholder")) {
-            url = fetchNextUrlFromProduct(product);
+    /**
+     * Runs the request for this product unless it already ran, waits for it if it is running on another thread
+     */
+    private void once(ConcurrentMap<Integer, CompletableFuture<Void>> requests, int productId,
+                      ProductRequest request) throws IOException {
+        CompletableFuture<Void> own = new CompletableFuture<>();
+        CompletableFuture<Void> existing = requests.putIfAbsent(productId, own);
+        if (existing == null) {
+            try {
+                request.fetch(productId);
+                own.complete(null);
+            } catch (IOException | RuntimeException e) {
+                own.completeExceptionally(e);
+                throw e;
+            }
+            return;
+        }
+        try {
+            existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for product " + productId);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to load product " + productId, cause);
         }
+    }
 
-        currentUrl = url;
-        currentProduct = product;
+    private PendingImage download(PendingImage image) {
+        HttpUrl url = HttpUrl.parse(image.url);
+        Request.Builder request = new Request.Builder().url(url);
 
-        LOGGER.info("Found url url");
+        ImageCache.Entry cached = cache.get(image.url);
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                request.header("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                request.header("If-Modified-Since", cached.getLastModified());
+            }
+        }
+
+        try (Response response = client.newCall(request.build()).execute()) {
+            if (cached != null && response.code() == 304) {
+                LOGGER.debug("Image not modified " + url);
+                cache.hit(image.url);
+                // Nothing to download or scale
+                image.skip = true;
+                return image;
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Unsuccessful request " + response.code() + " for " + url);
+            }
+            image.etag = response.header("ETag");
+            image.lastModified = response.header("Last-Modified");
+            image.bytes = response.body().bytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return image;
     }
 
-    private String fetchNextUrlFromProduct(Product product) throws IOException {
-        HttpUrl url = new HttpUrl.Builder()
-                .scheme("https")
-                .host(settings.getHost())
-                .addPathSegments(String.format("wp-json/wc/v2/products/%d", product.getProductId()))
-                .addQueryParameter("consumer_key", settings.getConsumerKey())
-                .addQueryParameter("consumer_secret", settings.getConsumerSecret())
-                .build();
+    private String scale(PendingImage image) {
+        if (!image.skip) {
+            try {
+                BufferedImage img = ImageIO.read(new ByteArrayInputStream(image.bytes));
+                if (img == null) {
+                    throw new IOException("Unsupported image format " + image.url);
+                }
+                BufferedImage scaled = scaleImage(img);
 
-        Request request = new Request.Builder().url(url).build();
-        Response response = client.newCall(request).execute();
+                // Readers must never see a partially written file
+                Path file = cache.getPath(image.url);
+                Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                try {
+                    ImageIO.write(scaled, "jpg", tmp.toFile());
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+                cache.put(image.url, image.etag, image.lastModified);
+                replaced.add(cache.getFilename(image.url));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return cache.getFilename(image.url);
+    }
 
-        ObjectMapper om = new ObjectMapper();
-        JsonNode node = om.readTree(response.body().byteStream());
+    private BufferedImage scaleImage(BufferedImage img) {
+        Image scaled = img.getScaledInstance(MAX_IMAGE_WIDTH, MAX_IMAGE_HEIGHT, Image.SCALE_SMOOTH);
+        BufferedImage out = new BufferedImage(MAX_IMAGE_WIDTH, MAX_IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
 
-        return node.get("images").get(0).get("src").asText();
+        Graphics2D g = out.createGraphics();
+        g.drawImage(scaled, 0, 0, null);
+        g.dispose();
+
+        return out;
     }
 
-    private String fetchNextUrlFromVariation(Product product) throws IOException {
-        HttpUrl url = new HttpUrl.Builder()
+    private HttpUrl.Builder productUrl(int productId) {
+        return new HttpUrl.Builder()
                 .scheme("https")
                 .host(settings.getHost())
-                .addPathSegments(String.format("wp-json/wc/v2/products/%d/variations/%d", product.getProductId(), product.getVariationId()))
+                .addPathSegments("wp-json/wc/v2/products")
+                .addPathSegment(String.valueOf(productId))
                 .addQueryParameter("consumer_key", settings.getConsumerKey())
-                .addQueryParameter("consumer_secret", settings.getConsumerSecret())
-                .build();
+                .addQueryParameter("consumer_secret", settings.getConsumerSecret());
+    }
+
+    private void fetchProduct(int productId) throws IOException {
+        HttpUrl url = productUrl(productId).build();
 
         Request request = new Request.Builder().url(url).build();
-        Response response = client.newCall(request).execute();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unsuccessful request " + response.code() + " for " + WebClient.redact(url));
+            }
+            decoder.decodeProduct(response.body().byteStream());
+        }
+    }
 
-        ObjectMapper om = new ObjectMapper();
-        JsonNode node = om.readTree(response.body().byteStream());
+    private void fetchVariations(int productId) throws IOException {
+        int page = 1;
+        int totalPages = 1;
+        while (page <= totalPages) {
+            HttpUrl url = productUrl(productId)
+                    .addPathSegment("variations")
+                    .addQueryParameter("per_page", String.valueOf(OrderFetcher.MAX_PAGE_SIZE))
+                    .addQueryParameter("page", String.valueOf(page))
+                    .build();
 
-        if (node.at("/data/status").asInt() == 404) {
-            return null;
+            Request request = new Request.Builder().url(url).build();
+            try (Response response = client.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("Unsuccessful request " + response.code() + " for "
+                            + WebClient.redact(url));
+                }
+                decoder.decodeVariations(response.body().byteStream(), productId, "");
+
+                String header = response.header("x-wp-totalpages");
+                if (header != null) {
+                    totalPages = Integer.parseInt(header);
+                }
+            }
+            page += 1;
         }
-
-        return node.get("image").get("src").asText();
     }
 
-
     @Override
     public boolean isDone() {
-        return products.isEmpty() && currentUrl == null;
+        return complete && groups.isEmpty() && waiting.isEmpty() && inFlight == 0;
     }
 
     @Override
     public int currentProgress() {
-        return maxProgress - (products.size() * 2) - (currentUrl == null ? 0 : 1);
+        return progress;
     }
 
     @Override
@@ -181,4 +473,42 @@ public class ProductImageFetcher implements SteppedTask {
     public Map<String, String> getImages() {
         return output;
     }
+
+    /**
+     * @return the cache filenames of all images written by this fetcher, thumbnails decoded earlier are outdated
+     */
+    public Set<String> getReplacedImages() {
+        return replaced;
+    }
+
+    /**
+     * An image travelling through the pipeline
+     */
+    private static class PendingImage {
+        private final String url;
+        private String etag;
+        private String lastModified;
+        private byte[] bytes;
+        private boolean skip;
+
+        private PendingImage(String url) {
+            this.url = url;
+        }
+    }
+
+    private interface ProductRequest {
+        void fetch(int productId) throws IOException;
+    }
+
+    private static class Result {
+        private final Product product;
+        private final String filename;
+        private final Throwable error;
+
+        private Result(Product product, String filename, Throwable error) {
+            this.product = product;
+            this.filename = filename;
+            this.error = error;
+        }
+    }
 }
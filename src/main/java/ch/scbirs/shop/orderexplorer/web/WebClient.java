@@ -0,0 +1,182 @@
+package ch.scbirs.shop.orderexplorer.web;
+
+import ch.scbirs.shop.orderexplorer.OrderExplorer;
+import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
+import ch.scbirs.shop.orderexplorer.util.LogUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared http and json infrastructure for all requests.
+ * <p>
+ * All clients share one connection pool, so connections (and http/2 streams) are reused between fetchers.
+ * OkHttp requests gzip compressed responses on its own. There is no http cache: api urls contain the
+ * credentials and images are cached by {@link ImageCache}.
+ */
+public class WebClient {
+
+    private static final Logger LOGGER = LogUtil.get();
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    /**
+     * Response cache of earlier versions, it contains the credentials in the cached urls
+     */
+    private static final Path OLD_CACHE = OrderExplorer.FOLDER.resolve("http-cache");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final OkHttpClient SHARED = createShared();
+    private static final WebClient DEFAULT = new WebClient(new UserSettings());
+
+    private final OkHttpClient client;
+    private final int maxConnections;
+    private final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    private WebClient(UserSettings settings) {
+        maxConnections = settings.getMaxConnections();
+        client = SHARED.newBuilder()
+                .connectTimeout(settings.getTimeout(), TimeUnit.SECONDS)
+                .readTimeout(settings.getTimeout(), TimeUnit.SECONDS)
+                .writeTimeout(settings.getTimeout(), TimeUnit.SECONDS)
+                .addInterceptor(this::limit)
+                .build();
+    }
+
+    private static OkHttpClient createShared() {
+        if (Files.exists(OLD_CACHE)) {
+            try {
+                FileUtils.deleteDirectory(OLD_CACHE.toFile());
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete old http cache", e);
+            }
+        }
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, 5, TimeUnit.MINUTES))
+                .build();
+    }
+
+    /**
+     * Limits the requests running at the same time per host.
+     * <p>
+     * The dispatcher limits only apply to asynchronous calls, all fetchers execute synchronously
+     * on their own pools, and several fetchers run at the same time.
+     */
+    private Response limit(Interceptor.Chain chain) throws IOException {
+        Semaphore semaphore = hosts.computeIfAbsent(chain.request().url().host(), h -> new Semaphore(maxConnections));
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+        if (response.body() == null) {
+            semaphore.release();
+            return response;
+        }
+        // The connection stays in use until the body is read, keep the permit until then
+        return response.newBuilder().body(new ReleasingBody(response.body(), semaphore)).build();
+    }
+
+    private static class ReleasingBody extends ResponseBody {
+        private final ResponseBody body;
+        private final BufferedSource source;
+
+        ReleasingBody(ResponseBody body, Semaphore semaphore) {
+            this.body = body;
+            AtomicBoolean released = new AtomicBoolean();
+            source = Okio.buffer(new ForwardingSource(body.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            semaphore.release();
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return body.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+    /**
+     * @return a client for requests to the shop configured in the settings
+     */
+    @Nonnull
+    public static WebClient create(@Nonnull UserSettings settings) {
+        return new WebClient(settings);
+    }
+
+    /**
+     * @return the url without the api credentials, for log and error messages
+     */
+    @Nonnull
+    public static String redact(@Nonnull HttpUrl url) {
+        return url.newBuilder()
+                .removeAllQueryParameters("consumer_key")
+                .removeAllQueryParameters("consumer_secret")
+                .build()
+                .toString();
+    }
+
+    /**
+     * @return a client with default settings for requests not going to the shop
+     */
+    @Nonnull
+    public static WebClient getDefault() {
+        return DEFAULT;
+    }
+
+    @Nonnull
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    @Nonnull
+    public ObjectMapper getObjectMapper() {
+        return MAPPER;
+    }
+}
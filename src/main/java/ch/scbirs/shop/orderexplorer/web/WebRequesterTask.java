@@ -2,82 +2,227 @@ package ch.scbirs.shop.orderexplorer.web;
 
 import ch.scbirs.shop.orderexplorer.OrderExplorer;
 import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
 import ch.scbirs.shop.orderexplorer.model.remote.Order;
-import ch.scbirs.shop.orderexplorer.model.remote.Product;
-import ch.scbirs.shop.orderexplorer.model.remote.products.ProductVariation;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
 import ch.scbirs.shop.orderexplorer.web.products.ProductFetcher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import javafx.concurrent.Task;
 import org.apache.logging.log4j.Logger;
 
-import java.io.IOException;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class WebRequesterTask extends Task<Data> {
     private static final Logger LOGGER = LogUtil.get();
+    /**
+     * Incremental syncs can miss changes (e.g. deleted orders), so do a full sync regularly
+     */
+    private static final Duration FULL_SYNC_INTERVAL = Duration.ofDays(1);
+    /**
+     * Safety margin for clock differences between us and the server
+     */
+    private static final Duration SYNC_OVERLAP = Duration.ofMinutes(5);
+
     private final Data prevData;
+    private final WebClient web;
+    private final boolean incremental;
+
+    private volatile boolean failed = false;
+    private volatile Set<String> replacedImages = Collections.emptySet();
 
     public WebRequesterTask(Data prevData) {
 
         this.prevData = prevData;
+        this.web = WebClient.create(prevData.getUserData().getUserSettings());
+        this.incremental = canSyncIncrementally(prevData);
+    }
+
+    private static boolean canSyncIncrementally(Data data) {
+        if (data.getLastSync() == 0 || data.getOrders().isEmpty()) {
+            return false;
+        }
+        Instant lastFullSync = Instant.ofEpochMilli(data.getLastFullSync());
+        return lastFullSync.plus(FULL_SYNC_INTERVAL).isAfter(Instant.now());
     }
 
     @Override
     protected Data call() throws Exception {
-        List<Order> orders = fetchOrders();
-        // List all products that have been ordered
-        Set<Product> allProducts = orders.stream()
+        long syncStart = System.currentTimeMillis();
+        LOGGER.info(incremental ? "Starting incremental sync" : "Starting full sync");
+        UserSettings settings = prevData.getUserData().getUserSettings();
+
+        Instant modifiedAfter = null;
+        if (incremental) {
+            modifiedAfter = Instant.ofEpochMilli(prevData.getLastSync()).minus(SYNC_OVERLAP);
+        }
+
+        // Images are resolved from the product catalogue where possible, it is filled while the products load.
+        // Only images with unknown urls wait for the whole catalogue, the others are downloaded right away
+        ImageCatalogue catalogue = new ImageCatalogue();
+        ImageCache imageCache = ImageCache.open(OrderExplorer.FOLDER, ImageCache.DEFAULT_MAX_SIZE,
+                web.getObjectMapper());
+
+        OrderFetcher orderFetcher = new OrderFetcher(web, settings, modifiedAfter);
+        ProductFetcher productFetcher = new ProductFetcher(web, settings, catalogue);
+        ProductImageFetcher imageFetcher = new ProductImageFetcher(web, imageCache, settings, catalogue);
+
+        // Start loading the images of every order page as soon as it arrives. Incremental syncs only return
+        // modified orders, their known images are revalidated with a conditional request
+        orderFetcher.setPageListener(page -> imageFetcher.add(page.stream()
                 .flatMap(order -> order.getProducts().stream())
-                .collect(Collectors.toSet());
-        Map<String, String> images = fetchImages(allProducts);
-        List<ProductVariation> variations = fetchProductVariations();
+                .collect(Collectors.toList())));
+
+        Phase orders = new Phase("Orders", orderFetcher);
+        Phase products = new Phase("Products", productFetcher);
+        Phase images = new Phase("Images", imageFetcher);
+        List<Phase> phases = Arrays.asList(orders, products, images);
+        Runnable onProgress = () -> updatePhaseProgress(phases);
+
+        runPhases(
+                () -> {
+                    try {
+                        orders.run(this::isStopped, onProgress);
+                    } finally {
+                        imageFetcher.complete();
+                    }
+                },
+                () -> {
+                    try {
+                        products.run(this::isStopped, onProgress);
+                    } finally {
+                        productFetcher.shutdown();
+                        imageFetcher.catalogueComplete();
+                    }
+                },
+                () -> {
+                    try {
+                        images.run(this::isStopped, onProgress);
+                    } finally {
+                        // The phase ends early when the sync is cancelled or another phase failed
+                        imageFetcher.shutdown();
+                    }
+                });
+
+        // Falls back to a full sync if the shop doesn't support incremental ones
+        boolean incrementalSync = orderFetcher.isIncremental();
+        List<Order> allOrders = orderFetcher.getOrders();
+        Map<String, String> allImages = new HashMap<>();
+        if (incrementalSync) {
+            allOrders = mergeOrders(prevData.getOrders(), allOrders, orderFetcher.getClosedOrderIds());
+            allImages.putAll(prevData.getImages());
+        }
+        allImages.putAll(imageFetcher.getImages());
+        imageCache.trim(allImages.values());
+        imageCache.save();
+        replacedImages = imageFetcher.getReplacedImages();
+
+        LOGGER.info("Sync finished after " + (System.currentTimeMillis() - syncStart) + " ms");
         updateMessage("Done");
         return prevData
-                .withOrders(orders)
-                .withImages(images)
-                .withProductVariations(variations);
+                .withOrders(allOrders)
+                .withImages(allImages)
+                .withProductVariations(productFetcher.getProducts())
+                .withSync(syncStart, incrementalSync ? prevData.getLastFullSync() : syncStart);
     }
 
-    private List<ProductVariation> fetchProductVariations() throws Exception {
-        updateMessage("Fetching all products");
-        ProductFetcher fetcher = new ProductFetcher(prevData.getUserData().getUserSettings());
-        while (!fetcher.isDone() && !isCancelled()) {
-            fetcher.doStep();
-            updateProgress(progress(fetcher.currentProgress(), fetcher.maxProgress(), 3, 3), 1);
+    /**
+     * Runs all phases concurrently and waits for them. If one phase fails, the others are stopped.
+     */
+    private void runPhases(PhaseRunnable... runnables) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(runnables.length,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("sync-phase-%d").build());
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (PhaseRunnable runnable : runnables) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        runnable.run();
+                        return null;
+                    } catch (Exception e) {
+                        failed = true;
+                        throw e;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            failed = true;
+            throw e;
+        } finally {
+            executor.shutdown();
         }
-        System.out.println(fetcher.getProducts());
-        return fetcher.getProducts();
     }
 
-    private Map<String, String> fetchImages(Set<Product> allProducts) throws IOException {
-        updateMessage("Fetching images");
-        ProductImageFetcher fetcher = new ProductImageFetcher(allProducts, OrderExplorer.FOLDER,
-                prevData.getUserData().getUserSettings());
-        while (!fetcher.isDone() && !isCancelled()) {
-            fetcher.doStep();
-            updateProgress(progress(fetcher.currentProgress(), fetcher.maxProgress(), 2, 3), 1);
+    /**
+     * @return the filenames of all images that were written by the sync, available once it succeeded
+     */
+    public Set<String> getReplacedImages() {
+        return replacedImages;
+    }
+
+    private boolean isStopped() {
+        return failed || isCancelled();
+    }
+
+    private void updatePhaseProgress(List<Phase> phases) {
+        double total = 0;
+        StringJoiner message = new StringJoiner(", ", "Fetching ", "");
+        for (Phase phase : phases) {
+            total += phase.getProgress();
+            if (phase.isRunning()) {
+                message.add(phase.getName().toLowerCase() + " " + Math.round(phase.getProgress() * 100) + "%");
+            }
         }
-        return fetcher.getImages();
+        updateProgress(total / phases.size(), 1);
+        updateMessage(message.toString());
     }
 
-    private List<Order> fetchOrders() throws IOException {
-        updateMessage("Fetching orders");
-        OrderFetcher fetcher = new OrderFetcher(prevData.getUserData().getUserSettings());
-        while (!fetcher.isDone() && !isCancelled()) {
-            fetcher.doStep();
-            updateProgress(progress(fetcher.currentProgress(), fetcher.maxProgress(), 1, 3), 1);
+    /**
+     * Applies the changed orders of an incremental sync to the previous order list.
+     * New orders are put in front, like the api returns them. Changed orders keep their position.
+     */
+    private List<Order> mergeOrders(List<Order> previous, List<Order> changed, Set<Integer> closed) {
+        LOGGER.info("Merging " + changed.size() + " changed and " + closed.size() + " closed orders");
+        Map<Integer, Order> changedById = new HashMap<>();
+        for (Order o : changed) {
+            changedById.put(o.getId(), o);
+        }
+        Set<Integer> previousIds = previous.stream()
+                .map(Order::getId)
+                .collect(Collectors.toSet());
+
+        List<Order> merged = new ArrayList<>(previous.size() + changed.size());
+        for (Order o : changed) {
+            if (!previousIds.contains(o.getId())) {
+                merged.add(o);
+            }
+        }
+        for (Order o : previous) {
+            if (!closed.contains(o.getId())) {
+                merged.add(changedById.getOrDefault(o.getId(), o));
+            }
         }
-        return fetcher.getOrders();
+        return merged;
     }
 
-    private float progress(int current, int max, int step, int maxstep) {
-        float currentProgress = (float) current / max;
-        float stepProgress = (float) step / maxstep;
-        float v = (currentProgress / maxstep) - (1f / maxstep) + stepProgress;
-        LOGGER.trace("Progress " + v);
-        return v;
+    private interface PhaseRunnable {
+        void run() throws Exception;
     }
 }
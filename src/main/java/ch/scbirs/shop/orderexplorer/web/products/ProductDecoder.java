@@ -0,0 +1,171 @@
+package ch.scbirs.shop.orderexplorer.web.products;
+
+import ch.scbirs.shop.orderexplorer.model.remote.products.ProductVariation;
+import ch.scbirs.shop.orderexplorer.web.ImageCatalogue;
+import ch.scbirs.shop.orderexplorer.web.JsonDecoder;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes pages of the <code>products</code> and <code>products/&lt;id&gt;/variations</code> endpoints.
+ * Image urls found on the way are added to the {@link ImageCatalogue}.
+ */
+public class ProductDecoder extends JsonDecoder {
+
+    private final ImageCatalogue catalogue;
+
+    public ProductDecoder(ImageCatalogue catalogue) {
+        this.catalogue = catalogue;
+    }
+
+    public List<ProductVariation> decodeProducts(InputStream in) throws IOException {
+        List<ProductVariation> products = new ArrayList<>();
+        try (JsonParser p = createParser(in)) {
+            startArray(p);
+            while (nextObject(p)) {
+                products.add(readProduct(p));
+            }
+        }
+        return products;
+    }
+
+    /**
+     * Decodes a single product, as returned by <code>products/&lt;id&gt;</code>
+     */
+    public ProductVariation decodeProduct(InputStream in) throws IOException {
+        try (JsonParser p = createParser(in)) {
+            JsonToken token = p.nextToken();
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a json object but got " + token + " at " + p.getCurrentLocation());
+            }
+            return readProduct(p);
+        }
+    }
+
+    /**
+     * Variations share id and name with their parent product
+     */
+    public List<ProductVariation> decodeVariations(InputStream in, ProductVariation parent) throws IOException {
+        return decodeVariations(in, parent.getId(), parent.getName());
+    }
+
+    public List<ProductVariation> decodeVariations(InputStream in, int parentId, String parentName) throws IOException {
+        List<ProductVariation> variations = new ArrayList<>();
+        try (JsonParser p = createParser(in)) {
+            startArray(p);
+            while (nextObject(p)) {
+                variations.add(readVariation(p, parentId, parentName));
+            }
+        }
+        return variations;
+    }
+
+    private ProductVariation readProduct(JsonParser p) throws IOException {
+        int id = 0;
+        String name = "";
+        String sku = "";
+        String price = "";
+        String permalink = "";
+        String type = "";
+        String image = null;
+
+        String field;
+        while ((field = nextField(p)) != null) {
+            switch (field) {
+                case "id":
+                    id = p.getValueAsInt();
+                    break;
+                case "name":
+                    name = text(p);
+                    break;
+                case "sku":
+                    sku = text(p);
+                    break;
+                case "price":
+                    price = text(p);
+                    break;
+                case "permalink":
+                    permalink = text(p);
+                    break;
+                case "type":
+                    type = text(p);
+                    break;
+                case "images":
+                    image = readFirstImage(p);
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        catalogue.putProduct(id, image);
+        return new ProductVariation(id, name, sku, price, permalink, type.equals("variable"));
+    }
+
+    private ProductVariation readVariation(JsonParser p, int parentId, String parentName) throws IOException {
+        int id = 0;
+        String sku = "";
+        String price = "";
+        String permalink = "";
+        String image = null;
+
+        String field;
+        while ((field = nextField(p)) != null) {
+            switch (field) {
+                case "id":
+                    id = p.getValueAsInt();
+                    break;
+                case "sku":
+                    sku = text(p);
+                    break;
+                case "price":
+                    price = text(p);
+                    break;
+                case "permalink":
+                    permalink = text(p);
+                    break;
+                case "image":
+                    image = readImage(p);
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        catalogue.putVariation(parentId, id, image);
+        return new ProductVariation(parentId, parentName, sku, price, permalink, true);
+    }
+
+    private String readFirstImage(JsonParser p) throws IOException {
+        if (!isArray(p)) {
+            return null;
+        }
+        String src = null;
+        while (nextObject(p)) {
+            String image = readImage(p);
+            if (src == null) {
+                src = image;
+            }
+        }
+        return src;
+    }
+
+    private String readImage(JsonParser p) throws IOException {
+        if (!isObject(p)) {
+            return null;
+        }
+        String src = null;
+        String field;
+        while ((field = nextField(p)) != null) {
+            if (field.equals("src")) {
+                src = text(p);
+            } else {
+                p.skipChildren();
+            }
+        }
+        return src;
+    }
+}
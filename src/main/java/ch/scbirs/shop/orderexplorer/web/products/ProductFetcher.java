@@ -4,54 +4,150 @@ import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
 import ch.scbirs.shop.orderexplorer.model.remote.products.ProductVariation;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
 import ch.scbirs.shop.orderexplorer.util.SteppedTask;
+import ch.scbirs.shop.orderexplorer.web.ImageCatalogue;
+import ch.scbirs.shop.orderexplorer.web.WebClient;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Loads the product catalogue.
+ * <p>
+ * Catalogue pages are loaded one per {@link #doStep()}. The variations of every variable product are
+ * requested on a bounded thread pool as soon as its catalogue page arrived, concurrently with the
+ * remaining catalogue pages. Once the catalogue is complete, every step waits for one variable product.
+ */
 public class ProductFetcher implements SteppedTask {
 
     private static final Logger LOGGER = LogUtil.get();
 
     private final SimpleProductFetcher simpleProductFetcher;
     private final VariableProductFetcher variableProductFetcher;
+    private final ExecutorService executor;
 
+    private final List<ProductVariation> simpleProducts = new ArrayList<>();
+    private final List<ProductVariation> variableProducts = new ArrayList<>();
+    private final Queue<Future<List<ProductVariation>>> pending = new ArrayDeque<>();
+    private final AtomicInteger variableDone = new AtomicInteger();
 
-    public ProductFetcher(UserSettings settings) {
-        simpleProductFetcher = new SimpleProductFetcher(settings);
-        variableProductFetcher = new VariableProductFetcher(settings);
+    private int handledProducts = 0;
+    private int variableSubmitted = 0;
+
+    public ProductFetcher(WebClient web, UserSettings settings, ImageCatalogue catalogue) {
+        simpleProductFetcher = new SimpleProductFetcher(web, settings, catalogue);
+        variableProductFetcher = new VariableProductFetcher(web, settings, catalogue);
+        executor = Executors.newFixedThreadPool(settings.getMaxConnections(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("variation-fetcher-%d").build());
     }
 
     @Override
-    public void doStep() throws Exception {
+    public void doStep() throws IOException {
         if (!simpleProductFetcher.isDone()) {
-            LOGGER.info("loading next simple product");
-            simpleProductFetcher.doStep();
+            LOGGER.info("loading next catalogue page");
+            try {
+                simpleProductFetcher.doStep();
+            } catch (IOException e) {
+                shutdown();
+                throw e;
+            }
+            submitNewProducts();
             if (simpleProductFetcher.isDone()) {
-                LOGGER.info("all simple products loaded");
-                variableProductFetcher.setInputProducts(simpleProductFetcher.getProducts());
+                LOGGER.info("all simple products loaded, waiting for " + pending.size() + " variable products");
+                // No further tasks, let the threads die once the queue is drained
+                executor.shutdown();
             }
         } else {
-            LOGGER.info("load next variable product");
-            variableProductFetcher.doStep();
+            variableProducts.addAll(await(pending.poll()));
         }
     }
 
+    private void submitNewProducts() {
+        List<ProductVariation> products = simpleProductFetcher.getProducts();
+        for (ProductVariation product : products.subList(handledProducts, products.size())) {
+            if (product.isVariable()) {
+                variableSubmitted += 1;
+                pending.add(executor.submit(() -> {
+                    List<ProductVariation> variations = variableProductFetcher.fetch(product);
+                    variableDone.incrementAndGet();
+                    return variations;
+                }));
+            } else {
+                simpleProducts.add(product);
+            }
+        }
+        handledProducts = products.size();
+    }
+
+    private List<ProductVariation> await(Future<List<ProductVariation>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shutdown();
+            throw new InterruptedIOException("Interrupted while waiting for product variations");
+        } catch (ExecutionException e) {
+            shutdown();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to load product variations", cause);
+        }
+    }
+
+    /**
+     * Stops loading variations and the threads loading them. Called when the sync ends, also if it was
+     * cancelled or failed somewhere else.
+     */
+    public void shutdown() {
+        pending.forEach(f -> f.cancel(true));
+        pending.clear();
+        executor.shutdownNow();
+    }
+
     @Override
     public boolean isDone() {
-        return simpleProductFetcher.isDone() & variableProductFetcher.isDone();
+        return simpleProductFetcher.isDone() && pending.isEmpty();
     }
 
     @Override
     public int currentProgress() {
-        return simpleProductFetcher.currentProgress() + variableProductFetcher.currentProgress();
+        return simpleProductFetcher.currentProgress() + variableDone.get();
     }
 
+    /**
+     * The number of variable products is only known once the whole catalogue is loaded.
+     * Until then it is extrapolated from the pages loaded so far.
+     */
     @Override
     public int maxProgress() {
-        return simpleProductFetcher.maxProgress() + variableProductFetcher.maxProgress();
+        int pages = simpleProductFetcher.currentProgress();
+        int maxPages = Math.max(simpleProductFetcher.maxProgress(), pages);
+        int variable = variableSubmitted;
+        if (!simpleProductFetcher.isDone() && pages > 0) {
+            variable = variableSubmitted * maxPages / pages;
+        }
+        return maxPages + variable;
     }
 
+    /**
+     * @return all simple products, followed by the variable products and their variations in catalogue order
+     */
     public List<ProductVariation> getProducts() {
-        return variableProductFetcher.getProducts();
+        List<ProductVariation> products = new ArrayList<>(simpleProducts.size() + variableProducts.size());
+        products.addAll(simpleProducts);
+        products.addAll(variableProducts);
+        return products;
     }
 }
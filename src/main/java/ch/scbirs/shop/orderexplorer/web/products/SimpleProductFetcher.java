@@ -4,9 +4,9 @@ import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
 import ch.scbirs.shop.orderexplorer.model.remote.products.ProductVariation;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
 import ch.scbirs.shop.orderexplorer.util.SteppedTask;
+import ch.scbirs.shop.orderexplorer.web.ImageCatalogue;
 import ch.scbirs.shop.orderexplorer.web.LinkHeader;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import ch.scbirs.shop.orderexplorer.web.WebClient;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -20,13 +20,16 @@ public class SimpleProductFetcher implements SteppedTask {
 
     private static final Logger LOGGER = LogUtil.get();
     private final Queue<HttpUrl> queue = new ArrayDeque<>();
-    private final OkHttpClient client = new OkHttpClient();
+    private final OkHttpClient client;
+    private final ProductDecoder decoder;
     private final List<ProductVariation> products;
 
     private int progress = 0;
     private int maxPages = 0;
 
-    public SimpleProductFetcher(UserSettings settings) {
+    public SimpleProductFetcher(WebClient web, UserSettings settings, ImageCatalogue catalogue) {
+        client = web.getClient();
+        decoder = new ProductDecoder(catalogue);
         products = new ArrayList<>();
         HttpUrl baseVariationUrl = new HttpUrl.Builder()
                 .scheme("https")
@@ -52,41 +55,28 @@ public class SimpleProductFetcher implements SteppedTask {
         progress += 1;
 
         Request request = new Request.Builder().url(url).build();
-        Response response = client.newCall(request).execute();
-
-        ObjectMapper om = new ObjectMapper();
-        JsonNode jsonNode = om.readTree(response.body().byteStream());
-
-        handleAnswer(jsonNode);
-
-        String totalPages = response.header("x-wp-totalpages");
-        if (totalPages != null) {
-            maxPages = Integer.parseInt(totalPages);
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unsuccessful request " + response.code() + " for " + WebClient.redact(url));
+            }
+            handleAnswer(decoder.decodeProducts(response.body().byteStream()));
+
+            String totalPages = response.header("x-wp-totalpages");
+            if (totalPages != null) {
+                maxPages = Integer.parseInt(totalPages);
+            }
+
+            LinkHeader link = new LinkHeader(response.headers("link"));
+            link.get("next").ifPresent(l -> queue.add(HttpUrl.get(l)));
         }
-
-        LinkHeader link = new LinkHeader(response.headers("link"));
-        link.get("next").ifPresent(l -> queue.add(HttpUrl.get(l)));
     }
 
 
-    private void handleAnswer(JsonNode jsonNode) {
-        jsonNode.forEach((pr) -> {
-            ProductVariation product = handleNormalProduct(pr);
+    private void handleAnswer(List<ProductVariation> decoded) {
+        for (ProductVariation product : decoded) {
             products.add(product);
             LOGGER.info("Did load product " + product);
-        });
-    }
-
-    private ProductVariation handleNormalProduct(JsonNode node) {
-        LOGGER.trace("Handle Product " + node);
-        return new ProductVariation(
-                node.get("id").asInt(),
-                node.get("name").asText(),
-                node.get("sku").asText(),
-                node.get("price").asText(),
-                node.get("permalink").asText(),
-                node.get("type").asText().equals("variable")
-        );
+        }
     }
 
     public List<ProductVariation> getProducts() {
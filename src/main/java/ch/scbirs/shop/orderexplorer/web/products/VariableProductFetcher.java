@@ -3,38 +3,37 @@ package ch.scbirs.shop.orderexplorer.web.products;
 import ch.scbirs.shop.orderexplorer.model.local.UserSettings;
 import ch.scbirs.shop.orderexplorer.model.remote.products.ProductVariation;
 import ch.scbirs.shop.orderexplorer.util.LogUtil;
-import ch.scbirs.shop.orderexplorer.util.SteppedTask;
+import ch.scbirs.shop.orderexplorer.web.ImageCatalogue;
 import ch.scbirs.shop.orderexplorer.web.LinkHeader;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import ch.scbirs.shop.orderexplorer.web.WebClient;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import org.apache.logging.log4j.Logger;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-public class VariableProductFetcher implements SteppedTask {
+/**
+ * Loads the variations of variable products. Variations with the same price as their
+ * parent are collapsed into the parent product.
+ * <p>
+ * {@link #fetch(ProductVariation)} is thread safe, so multiple products can be loaded concurrently.
+ */
+public class VariableProductFetcher {
 
     private static final Logger LOGGER = LogUtil.get();
 
-    private final UserSettings settings;
-    private final OkHttpClient client = new OkHttpClient();
-
-    private final Queue<HttpUrl> pages = new ArrayDeque<>();
-    private final Queue<ProductVariation> inputProducts = new ArrayDeque<>();
-    private final List<ProductVariation> output = new ArrayList<>();
+    private final OkHttpClient client;
+    private final ProductDecoder decoder;
 
     private final HttpUrl baseVariationUrl;
 
-    private ProductVariation lastProduct;
-
-    private int progress = 0;
-    private int maxProgress = 0;
-
-    public VariableProductFetcher(UserSettings settings) {
+    public VariableProductFetcher(WebClient web, UserSettings settings, ImageCatalogue catalogue) {
+        client = web.getClient();
+        decoder = new ProductDecoder(catalogue);
         baseVariationUrl = new HttpUrl.Builder()
                 .scheme("https")
                 .host(settings.getHost())
@@ -42,101 +41,50 @@ public class VariableProductFetcher implements SteppedTask {
                 .addQueryParameter("consumer_key", settings.getConsumerKey())
                 .addQueryParameter("consumer_secret", settings.getConsumerSecret())
                 .build();
-        this.settings = settings;
     }
 
-    @Override
-    public void doStep() throws Exception {
-        HttpUrl url = null;
-        if (pages.isEmpty()) {
-            lastProduct = inputProducts.poll();
-            url = baseVariationUrl.newBuilder()
-                    .addPathSegment(String.valueOf(lastProduct.getId()))
-                    .addPathSegment("variations")
-                    .build();
-        } else {
-            url = pages.poll();
+    /**
+     * Loads all variation pages of a variable product
+     */
+    public List<ProductVariation> fetch(ProductVariation product) throws IOException {
+        List<ProductVariation> output = new ArrayList<>();
+        HttpUrl url = baseVariationUrl.newBuilder()
+                .addPathSegment(String.valueOf(product.getId()))
+                .addPathSegment("variations")
+                .build();
+        while (url != null) {
+            url = fetchPage(url, product, output);
         }
-        doStepWithUrl(url);
+        return output;
     }
 
-    public void doStepWithUrl(HttpUrl url) throws Exception {
-
-        progress += 1;
-
-        LOGGER.info("Load variation from url " + url);
+    private HttpUrl fetchPage(HttpUrl url, ProductVariation product, List<ProductVariation> output) throws IOException {
+        LOGGER.info("Load variation from url " + WebClient.redact(url));
 
         Request request = new Request.Builder().url(url).build();
-        Response response = client.newCall(request).execute();
-
-        ObjectMapper om = new ObjectMapper();
-        JsonNode jsonNode = om.readTree(response.body().byteStream());
-
-        handleAnswer(jsonNode);
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unsuccessful request " + response.code() + " for " + WebClient.redact(url));
+            }
+            handleAnswer(decoder.decodeVariations(response.body().byteStream(), product), product, output);
 
-        String totalPages = response.header("x-wp-totalpages");
-        if (totalPages != null) {
-            maxProgress += Integer.parseInt(totalPages) - 1;
+            LinkHeader link = new LinkHeader(response.headers("link"));
+            return link.get("next").map(HttpUrl::get).orElse(null);
         }
-
-        LinkHeader link = new LinkHeader(response.headers("link"));
-        link.get("next").ifPresent(l -> pages.add(HttpUrl.get(l)));
     }
 
-    private void handleAnswer(JsonNode node) {
-        node.forEach(v -> {
-            ProductVariation product = handleVariableProduct(v, lastProduct);
-            if (!product.getPrice().equalsIgnoreCase(lastProduct.getPrice())) {
-                output.add(product);
+    private void handleAnswer(List<ProductVariation> variations, ProductVariation product,
+                              List<ProductVariation> output) {
+        for (ProductVariation variation : variations) {
+            if (!variation.getPrice().equalsIgnoreCase(product.getPrice())) {
+                output.add(variation);
                 LOGGER.info("Add variation with different price than parent");
-            } else if (!output.contains(lastProduct)) {
-                output.add(lastProduct);
+            } else if (!output.contains(product)) {
+                output.add(product);
                 LOGGER.info("Add parent product because they have the same price");
             } else {
                 LOGGER.info("Skip product");
             }
-        });
-    }
-
-    private ProductVariation handleVariableProduct(JsonNode node, ProductVariation pv) {
-        LOGGER.trace("Handle Product " + node);
-        return new ProductVariation(
-                pv.getId(),
-                pv.getName(),
-                node.get("sku").asText(),
-                node.get("price").asText(),
-                node.get("permalink").asText(),
-                true
-        );
-    }
-
-    @Override
-    public boolean isDone() {
-        return inputProducts.isEmpty() && pages.isEmpty();
-    }
-
-    @Override
-    public int currentProgress() {
-        return progress;
-    }
-
-    @Override
-    public int maxProgress() {
-        return maxProgress;
-    }
-
-    public void setInputProducts(List<ProductVariation> inputProducts) {
-        Map<Boolean, List<ProductVariation>> lists = inputProducts.stream()
-                .collect(Collectors.partitioningBy(ProductVariation::isVariable));
-        List<ProductVariation> variableProducts = lists.get(true);
-        List<ProductVariation> otherProducts = lists.get(false);
-
-        this.inputProducts.addAll(variableProducts);
-        output.addAll(otherProducts);
-        maxProgress = Math.max(this.inputProducts.size(), maxProgress);
-    }
-
-    public List<ProductVariation> getProducts() {
-        return output;
+        }
     }
 }
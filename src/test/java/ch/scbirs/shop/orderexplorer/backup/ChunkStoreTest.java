@@ -0,0 +1,131 @@
+package ch.scbirs.shop.orderexplorer.backup;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ChunkStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path chunks;
+    private ChunkStore store;
+
+    @Before
+    public void setUp() {
+        chunks = folder.getRoot().toPath().resolve("chunks");
+        store = new ChunkStore(chunks);
+    }
+
+    private static byte[] content(long seed, int length) {
+        Random random = new Random(seed);
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (' ' + random.nextInt(95));
+        }
+        return content;
+    }
+
+    private static Set<String> hashes(List<ChunkStore.Chunk> chunks) {
+        return chunks.stream().map(ChunkStore.Chunk::getHash).collect(Collectors.toSet());
+    }
+
+    private int fileCount() throws IOException {
+        try (Stream<Path> files = Files.list(chunks)) {
+            return (int) files.count();
+        }
+    }
+
+    @Test
+    public void contentIsReassembled() throws IOException {
+        byte[] content = content(1, 500_000);
+        List<ChunkStore.Chunk> written = store.write(content);
+
+        assertTrue(written.size() > 1);
+        assertEquals(content.length, written.stream().mapToInt(ChunkStore.Chunk::getLength).sum());
+        for (ChunkStore.Chunk chunk : written.subList(0, written.size() - 1)) {
+            assertTrue(chunk.getLength() >= 2 * 1024 && chunk.getLength() <= 64 * 1024);
+        }
+        assertArrayEquals(content, store.read(written));
+        assertArrayEquals(content, new ChunkStore(chunks).read(written));
+    }
+
+    @Test
+    public void emptyContentHasNoChunks() throws IOException {
+        List<ChunkStore.Chunk> written = store.write(new byte[0]);
+
+        assertTrue(written.isEmpty());
+        assertArrayEquals(new byte[0], store.read(written));
+    }
+
+    @Test
+    public void sameContentIsStoredOnce() throws IOException {
+        byte[] content = content(2, 200_000);
+        List<ChunkStore.Chunk> first = store.write(content);
+        int files = fileCount();
+        long size = store.size();
+
+        List<ChunkStore.Chunk> second = store.write(content.clone());
+
+        assertEquals(hashes(first), hashes(second));
+        assertEquals(files, fileCount());
+        assertEquals(size, store.size());
+    }
+
+    @Test
+    public void insertionOnlyChangesTheChunksAroundIt() throws IOException {
+        byte[] content = content(3, 500_000);
+        byte[] inserted = new byte[content.length + 10];
+        int at = content.length / 2;
+        System.arraycopy(content, 0, inserted, 0, at);
+        System.arraycopy(content(4, 10), 0, inserted, at, 10);
+        System.arraycopy(content, at, inserted, at + 10, content.length - at);
+
+        Set<String> before = hashes(store.write(content));
+        List<ChunkStore.Chunk> after = store.write(inserted);
+
+        Set<String> changed = new HashSet<>(hashes(after));
+        changed.removeAll(before);
+        assertTrue("changed " + changed.size() + " of " + after.size(), changed.size() <= 2);
+        assertArrayEquals(inserted, store.read(after));
+    }
+
+    @Test
+    public void retainDeletesOtherChunks() throws IOException {
+        List<ChunkStore.Chunk> kept = store.write(content(5, 100_000));
+        List<ChunkStore.Chunk> dropped = store.write(content(6, 100_000));
+        Path readme = chunks.resolve("README");
+        Files.write(readme, new byte[]{'x'});
+
+        store.retain(hashes(kept));
+
+        assertArrayEquals(content(5, 100_000), store.read(kept));
+        for (ChunkStore.Chunk chunk : dropped) {
+            assertFalse(Files.exists(chunks.resolve(chunk.getHash() + ".gz")));
+        }
+        assertTrue(Files.exists(readme));
+        assertEquals(hashes(kept).size() + 1, fileCount());
+    }
+
+    @Test
+    public void retainWithoutFolder() throws IOException {
+        store.retain(new HashSet<>());
+
+        assertFalse(Files.exists(chunks));
+        assertEquals(0, store.size());
+    }
+}
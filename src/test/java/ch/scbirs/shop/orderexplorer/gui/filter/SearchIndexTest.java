@@ -0,0 +1,153 @@
+package ch.scbirs.shop.orderexplorer.gui.filter;
+
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private static Order order(int id, String firstName, String lastName, String note, Product... products) {
+        Order.Builder b = new Order.Builder()
+                .setId(id)
+                .setFirstName(firstName)
+                .setLastName(lastName)
+                .setShippingFirstName(firstName)
+                .setShippingLastName(lastName)
+                .setEmail(firstName.toLowerCase() + "@example.com")
+                .setStatus("processing")
+                .setTotal("20.00")
+                .setNote(note);
+        for (Product p : products) {
+            b.addProduct(p);
+        }
+        return b.build();
+    }
+
+    private static Product product(int id, String name, String sku, String size) {
+        return new Product(id, 1, name, Collections.singletonMap("size", size), 20, sku, id, 0);
+    }
+
+    private static List<Integer> ids(List<SearchIndex.Match> matches) {
+        return matches.stream().map(m -> m.getOrder().getId()).collect(Collectors.toList());
+    }
+
+    private static final List<Order> ORDERS = Arrays.asList(
+            order(1, "Anna", "Muster", "", product(10, "Hoodie", "HD-01", "M")),
+            order(2, "Beat", "Meier", "Hoodie for Anna", product(11, "T-Shirt", "TS-02", "XL")),
+            order(3, "Claudia", "Hannah", "", product(12, "Cap", "CP-03", "S")),
+            order(4, "Daniel", "Schmid", "", product(13, "Jacket", "JK-04", "XL")));
+
+    @Test
+    public void findsSubstringsIgnoringCase() {
+        SearchIndex index = new SearchIndex(ORDERS);
+
+        assertEquals(Collections.singletonList(1), ids(index.search("MUSTER")));
+        assertEquals(Collections.singletonList(1), ids(index.search("uste")));
+        assertEquals(Arrays.asList(2, 4), ids(index.search("size: xl")));
+        assertTrue(index.search("nothing like this").isEmpty());
+    }
+
+    @Test
+    public void shortQueriesCheckAllOrders() {
+        SearchIndex index = new SearchIndex(ORDERS);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), ids(index.search("e")).stream().sorted().collect(Collectors.toList()));
+        assertEquals(Collections.singletonList(3), ids(index.search("ca")));
+    }
+
+    @Test
+    public void reportsTheMatchedFields() {
+        SearchIndex index = new SearchIndex(ORDERS);
+
+        List<SearchIndex.Match> sku = index.search("ts-02");
+        assertEquals(1, sku.size());
+        assertEquals(EnumSet.of(SearchIndex.Field.SKU), sku.get(0).getFields());
+
+        List<SearchIndex.Match> anna = index.search("anna");
+        assertEquals(EnumSet.of(SearchIndex.Field.NAME, SearchIndex.Field.SHIPPING_NAME, SearchIndex.Field.EMAIL),
+                anna.get(0).getFields());
+        assertEquals(EnumSet.of(SearchIndex.Field.NOTE), anna.get(2).getFields());
+    }
+
+    @Test
+    public void ranksByFieldAndPrefix() {
+        SearchIndex index = new SearchIndex(ORDERS);
+
+        // Anna at the start of the name, then inside the name "Hannah", then in the note
+        List<SearchIndex.Match> anna = index.search("anna");
+        assertEquals(Arrays.asList(1, 3, 2), ids(anna));
+        assertTrue(anna.get(0).getScore() > anna.get(1).getScore());
+        assertTrue(anna.get(1).getScore() > anna.get(2).getScore());
+        // Product name before note
+        assertEquals(Arrays.asList(1, 2), ids(index.search("hoodie")));
+    }
+
+    @Test
+    public void equalMatchesKeepTheListOrder() {
+        List<Order> reversed = new ArrayList<>(ORDERS);
+        Collections.reverse(reversed);
+
+        assertEquals(Arrays.asList(2, 4), ids(new SearchIndex(ORDERS).search("xl")));
+        assertEquals(Arrays.asList(4, 2), ids(new SearchIndex(reversed).search("xl")));
+
+        SearchIndex index = new SearchIndex(ORDERS);
+        index.update(reversed);
+        assertEquals(Arrays.asList(4, 2), ids(index.search("xl")));
+    }
+
+    @Test
+    public void updateReindexesChangedOrders() {
+        SearchIndex index = new SearchIndex(ORDERS);
+
+        List<Order> orders = new ArrayList<>(ORDERS);
+        orders.set(0, order(1, "Anna", "Keller", "", product(10, "Hoodie", "HD-01", "M")));
+        orders.remove(3);
+        orders.add(0, order(5, "Eva", "Muster", ""));
+        index.update(orders);
+
+        assertEquals(Collections.singletonList(5), ids(index.search("muster")));
+        assertEquals(Collections.singletonList(1), ids(index.search("keller")));
+        assertTrue(index.search("schmid").isEmpty());
+        assertEquals(Collections.singletonList(2), ids(index.search("meier")));
+        assertSame(orders.get(1), index.search("keller").get(0).getOrder());
+    }
+
+    @Test
+    public void updateMatchesAFreshIndex() {
+        Random random = new Random(1);
+        String[] names = {"Anna", "Beat", "Claudia", "Hans", "Eva"};
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            orders.add(order(i, names[random.nextInt(names.length)], "Muster", "note " + random.nextInt(50)));
+        }
+        SearchIndex index = new SearchIndex(orders);
+        int nextId = 1000;
+        for (int round = 0; round < 20; round++) {
+            orders = new ArrayList<>(orders);
+            for (int k = 0; k < 5; k++) {
+                orders.remove(random.nextInt(orders.size()));
+                int i = random.nextInt(orders.size());
+                orders.set(i, order(orders.get(i).getId(), names[random.nextInt(names.length)], "Muster",
+                        "note " + random.nextInt(50)));
+                orders.add(random.nextInt(orders.size()), order(nextId++, names[random.nextInt(names.length)],
+                        "Neu", "note"));
+            }
+            index.update(orders);
+
+            SearchIndex fresh = new SearchIndex(orders);
+            for (String query : new String[]{"a", "an", "anna", "note 1", "ote 4", "neu", "xyz"}) {
+                assertEquals(query, ids(fresh.search(query)), ids(index.search(query)));
+            }
+        }
+    }
+}
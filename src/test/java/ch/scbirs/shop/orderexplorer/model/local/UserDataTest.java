@@ -0,0 +1,113 @@
+package ch.scbirs.shop.orderexplorer.model.local;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class UserDataTest {
+
+    /**
+     * Same as UserData.MAX_CHANGED
+     */
+    private static final int MAX_CHANGED = 256;
+
+    private static final ProductData PAID = new ProductData(new Status(false, true, false));
+    private static final ProductData DONE = new ProductData(new Status(true, true, true));
+
+    private static UserData start() {
+        Map<Integer, ProductData> productData = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            productData.put(i, new ProductData());
+        }
+        return new UserData(productData, new UserSettings());
+    }
+
+    private static Set<Integer> set(Integer... ids) {
+        Set<Integer> set = new HashSet<>();
+        Collections.addAll(set, ids);
+        return set;
+    }
+
+    @Test
+    public void sameDataHasNoChanges() {
+        UserData userData = start();
+
+        assertEquals(set(), userData.changedSince(userData));
+        assertEquals(set(), userData.withUserSettings(new UserSettings().withHost("shop.example.com"))
+                .changedSince(userData));
+    }
+
+    @Test
+    public void unrelatedDataIsUnknown() {
+        UserData userData = start();
+
+        assertNull(start().changedSince(userData));
+        assertNull(userData.withProductData(new HashMap<>(userData.getProductData())).changedSince(userData));
+    }
+
+    @Test
+    public void changesAreTracked() {
+        UserData start = start();
+        UserData one = start.withProductData(1, PAID);
+        UserData two = one.withProductData(2, DONE);
+
+        assertEquals(set(1), one.changedSince(start));
+        assertEquals(set(1, 2), two.changedSince(start));
+        // Compared with a user data of the same basis, the changes of both may differ
+        assertEquals(set(1, 2), two.changedSince(one));
+        assertEquals(set(1, 2), two.withUserSettings(new UserSettings()).changedSince(one));
+    }
+
+    @Test
+    public void changesStartOverAfterTheLimit() {
+        UserData start = start();
+        UserData userData = start;
+        for (int i = 0; i < MAX_CHANGED; i++) {
+            userData = userData.withProductData(i, PAID);
+        }
+        Set<Integer> all = userData.changedSince(start);
+        assertNotNull(all);
+        assertEquals(MAX_CHANGED, all.size());
+
+        UserData previous = userData;
+        userData = userData.withProductData(MAX_CHANGED, DONE);
+
+        assertNull(userData.changedSince(start));
+        assertEquals(set(MAX_CHANGED), userData.changedSince(previous));
+        assertEquals(set(MAX_CHANGED, 0), userData.withProductData(0, DONE).changedSince(previous));
+    }
+
+    @Test
+    public void trackedChangesContainAllDifferences() {
+        Random random = new Random(1);
+        ProductData[] values = {new ProductData(), PAID, DONE};
+        List<UserData> history = new ArrayList<>();
+        UserData userData = start();
+        history.add(userData);
+        for (int i = 0; i < 1000; i++) {
+            userData = userData.withProductData(random.nextInt(1000), values[random.nextInt(values.length)]);
+            history.add(userData);
+
+            UserData previous = history.get(random.nextInt(history.size()));
+            Set<Integer> changed = userData.changedSince(previous);
+            if (changed == null) {
+                continue;
+            }
+            for (int id = 0; id < 1000; id++) {
+                if (!Objects.equals(userData.getProductData().get(id), previous.getProductData().get(id))) {
+                    assertTrue("product " + id + " changed", changed.contains(id));
+                }
+            }
+        }
+    }
+}
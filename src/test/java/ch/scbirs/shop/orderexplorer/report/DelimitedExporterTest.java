@@ -0,0 +1,87 @@
+package ch.scbirs.shop.orderexplorer.report;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class DelimitedExporterTest {
+
+    private static final String BOM = "\uFEFF";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String read(Path p) throws IOException {
+        return new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void plainValuesAreNotQuoted() throws IOException {
+        Path p = folder.getRoot().toPath().resolve("plain.csv");
+        try (Exporter exporter = new CsvExporter(p, "Name", "Quantity", "Price")) {
+            exporter.cell("Hoodie").cell(2).cell(19.5).endRow();
+        }
+
+        assertEquals(BOM + "Name,Quantity,Price\r\nHoodie,2,19.5\r\n", read(p));
+    }
+
+    @Test
+    public void specialValuesAreQuotedLikeRfc4180() throws IOException {
+        Path p = folder.getRoot().toPath().resolve("quoted.csv");
+        try (Exporter exporter = new CsvExporter(p, "A", "B", "C", "D")) {
+            exporter.cell("say \"hi\"").cell("a,b").cell("line\nbreak").cell("cr\rlf").endRow();
+        }
+
+        assertEquals(BOM + "A,B,C,D\r\n\"say \"\"hi\"\"\",\"a,b\",\"line\nbreak\",\"cr\rlf\"\r\n", read(p));
+    }
+
+    @Test
+    public void onlyTheOwnDelimiterIsQuoted() throws IOException {
+        Path p = folder.getRoot().toPath().resolve("tabs.tsv");
+        try (Exporter exporter = new TsvExporter(p, "A", "B")) {
+            exporter.cell("a,b").cell("a\tb").endRow();
+        }
+
+        assertEquals(BOM + "A\tB\r\na,b\t\"a\tb\"\r\n", read(p));
+    }
+
+    @Test
+    public void umlautsAreWrittenAsUtf8() throws IOException {
+        Path p = folder.getRoot().toPath().resolve("umlauts.csv");
+        try (Exporter exporter = new CsvExporter(p, "Name")) {
+            exporter.cell("M\u00fcller Gr\u00f6\u00dfe").endRow();
+        }
+
+        byte[] bytes = Files.readAllBytes(p);
+        assertEquals((byte) 0xEF, bytes[0]);
+        assertEquals((byte) 0xBB, bytes[1]);
+        assertEquals((byte) 0xBF, bytes[2]);
+        assertEquals(BOM + "Name\r\nM\u00fcller Gr\u00f6\u00dfe\r\n", read(p));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void incompleteRowsAreRejected() throws IOException {
+        Path p = folder.getRoot().toPath().resolve("incomplete.csv");
+        try (Exporter exporter = new CsvExporter(p, "A", "B")) {
+            exporter.cell("a").endRow();
+        }
+    }
+
+    @Test
+    public void abortKeepsTheCause() throws IOException {
+        Path p = folder.getRoot().toPath().resolve("aborted.csv");
+        Exporter exporter = new CsvExporter(p, "A");
+        IOException cause = new IOException("failed");
+        exporter.abort(cause);
+
+        assertEquals(0, cause.getSuppressed().length);
+        assertEquals(BOM + "A\r\n", read(p));
+    }
+}
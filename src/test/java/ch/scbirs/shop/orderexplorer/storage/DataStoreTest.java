@@ -0,0 +1,170 @@
+package ch.scbirs.shop.orderexplorer.storage;
+
+import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.ProductData;
+import ch.scbirs.shop.orderexplorer.model.local.Status;
+import ch.scbirs.shop.orderexplorer.model.local.UserData;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DataStoreTest {
+
+    private static final ProductData PAID = new ProductData(new Status(false, true, false));
+    private static final ProductData DONE = new ProductData(new Status(true, true, true));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path userDataFile;
+    private Path journal;
+
+    @Before
+    public void setUp() {
+        userDataFile = folder.getRoot().toPath().resolve("userdata.json");
+        journal = folder.getRoot().toPath().resolve("userdata.journal");
+    }
+
+    private DataStore store() {
+        Path root = folder.getRoot().toPath();
+        return new DataStore(userDataFile, journal, root.resolve("remote"), SnapshotFormat.JSON,
+                root.resolve("data.json"));
+    }
+
+    private static Data data() {
+        Order order = new Order.Builder().setId(1).setFirstName("Anna").setLastName("Muster")
+                .setShippingFirstName("Anna").setShippingLastName("Muster").setEmail("anna@example.com")
+                .setStatus("processing").setTotal("20.00").setNote("").build();
+        return new Data(Collections.singletonList(order), Collections.emptyMap(), Collections.emptyList(),
+                new UserData());
+    }
+
+    private static Data withStatus(Data data, int productId, ProductData productData) {
+        return data.withUserData(data.getUserData().withProductData(productId, productData));
+    }
+
+    private List<String> journalLines() throws IOException {
+        return Files.readAllLines(journal, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void statusChangesAreAppendedToTheJournal() throws IOException {
+        DataStore store = store();
+        Data data = data();
+        store.saveSnapshot(data);
+        byte[] snapshot = Files.readAllBytes(userDataFile);
+
+        data = withStatus(data, 10, PAID);
+        data = withStatus(data, 11, DONE);
+        store.save(data);
+        data = withStatus(data, 10, DONE);
+        store.save(data);
+
+        assertEquals(3, journalLines().size());
+        assertArrayEquals(snapshot, Files.readAllBytes(userDataFile));
+        assertEquals(data, store().load());
+    }
+
+    @Test
+    public void unchangedDataAppendsNothing() throws IOException {
+        DataStore store = store();
+        Data data = withStatus(data(), 10, PAID);
+        store.saveSnapshot(data);
+        store.save(data);
+
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    public void settingsChangeCompactsTheJournal() throws IOException {
+        DataStore store = store();
+        Data data = data();
+        store.saveSnapshot(data);
+        data = withStatus(data, 10, PAID);
+        store.save(data);
+        assertTrue(Files.exists(journal));
+
+        UserData userData = data.getUserData();
+        data = data.withUserData(userData.withUserSettings(userData.getUserSettings().withHost("shop.example.com")));
+        store.save(data);
+
+        assertFalse(Files.exists(journal));
+        assertEquals(data, store().load());
+    }
+
+    @Test
+    public void longJournalIsCompacted() throws IOException {
+        DataStore store = store();
+        Data data = data();
+        store.saveSnapshot(data);
+        for (int i = 0; i < 600; i++) {
+            data = withStatus(data, i, PAID);
+        }
+        store.save(data);
+        assertEquals(600, journalLines().size());
+
+        for (int i = 0; i < 600; i++) {
+            data = withStatus(data, i, DONE);
+        }
+        store.save(data);
+
+        assertFalse(Files.exists(journal));
+        assertEquals(data, store().load());
+    }
+
+    @Test
+    public void incompleteLastEntryIsIgnored() throws IOException {
+        DataStore store = store();
+        Data data = data();
+        store.saveSnapshot(data);
+        data = withStatus(data, 10, PAID);
+        store.save(data);
+        Files.write(journal, "{\"productId\":11,\"produ".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        DataStore reopened = store();
+        assertEquals(data, reopened.load());
+        // Compacted, so later entries aren't appended after the damaged one
+        assertFalse(Files.exists(journal));
+
+        data = withStatus(data, 12, DONE);
+        reopened.save(data);
+        assertEquals(data, store().load());
+    }
+
+    @Test
+    public void entriesAfterADamagedEntryAreDropped() throws IOException {
+        DataStore store = store();
+        Data data = data();
+        store.saveSnapshot(data);
+        Data beforeDamage = withStatus(data, 10, PAID);
+        store.save(beforeDamage);
+        Files.write(journal, "garbage\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        store.save(withStatus(beforeDamage, 11, DONE));
+
+        assertEquals(beforeDamage, store().load());
+        assertFalse(Files.exists(journal));
+    }
+
+    @Test
+    public void userDataLoadsWithoutTheRemoteCache() throws IOException {
+        Data data = withStatus(data(), 10, PAID);
+        store().saveSnapshot(data);
+
+        DataStore store = store();
+        assertEquals(data.getUserData(), store.loadUserData());
+        assertEquals(data.getOrders(), store.loadRemote().getOrders());
+    }
+}
@@ -0,0 +1,120 @@
+package ch.scbirs.shop.orderexplorer.util;
+
+import ch.scbirs.shop.orderexplorer.model.Data;
+import ch.scbirs.shop.orderexplorer.model.local.ProductData;
+import ch.scbirs.shop.orderexplorer.model.local.Status;
+import ch.scbirs.shop.orderexplorer.model.local.UserData;
+import ch.scbirs.shop.orderexplorer.model.remote.Order;
+import ch.scbirs.shop.orderexplorer.model.remote.Product;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OrderStatusIndexTest {
+
+    private static final Status PAID = new Status(false, true, false);
+    private static final Status IN_STOCK = new Status(true, false, false);
+    private static final Status DONE = new Status(true, true, true);
+
+    private static Order order(int id, int... productIds) {
+        Order.Builder b = new Order.Builder()
+                .setId(id)
+                .setFirstName("Anna")
+                .setLastName("Muster")
+                .setShippingFirstName("Anna")
+                .setShippingLastName("Muster")
+                .setEmail("anna@example.com")
+                .setStatus("processing")
+                .setTotal("20.00")
+                .setNote("");
+        for (int productId : productIds) {
+            b.addProduct(new Product(productId, 1, "Hoodie", Collections.emptyMap(), 20, "HD", 1, 0));
+        }
+        return b.build();
+    }
+
+    private static Data data(Order... orders) {
+        return new Data(Arrays.asList(orders), Collections.emptyMap(), Collections.emptyList(), new UserData());
+    }
+
+    private static Data withStatus(Data data, int productId, Status status) {
+        return data.withUserData(data.getUserData().withProductData(productId, new ProductData(status)));
+    }
+
+    private static String describe(DataUtil.OrderStatus s) {
+        if (s == null) {
+            return "none";
+        }
+        return "paid=" + (s.isPaidIndetermiate() ? "?" : s.isPaid())
+                + " inStock=" + (s.isInStockIndeterminate() ? "?" : s.isInStock())
+                + " done=" + (s.isDoneIndeterminate() ? "?" : s.isDone());
+    }
+
+    private static void assertSameStatuses(Data data, OrderStatusIndex index) {
+        OrderStatusIndex full = new OrderStatusIndex(data);
+        for (Order order : data.getOrders()) {
+            assertEquals("order " + order.getId(), describe(full.get(order)), describe(index.get(order)));
+        }
+    }
+
+    @Test
+    public void aggregatesTheProductStatuses() {
+        Order same = order(1, 10, 11);
+        Order mixed = order(2, 20, 21);
+        Order empty = order(3);
+        Data data = data(same, mixed, empty);
+        data = withStatus(data, 10, PAID);
+        data = withStatus(data, 11, PAID);
+        data = withStatus(data, 20, PAID);
+        data = withStatus(data, 21, IN_STOCK);
+
+        OrderStatusIndex index = new OrderStatusIndex(data);
+
+        assertEquals("paid=true inStock=false done=false", describe(index.get(same)));
+        assertEquals("paid=? inStock=? done=false", describe(index.get(mixed)));
+        assertNull(index.get(empty));
+    }
+
+    @Test
+    public void ordersOfOtherDataAreAggregated() {
+        Data data = withStatus(data(order(1, 10)), 10, DONE);
+        OrderStatusIndex index = new OrderStatusIndex(data);
+
+        Order other = order(1, 10, 11);
+        assertEquals("paid=? inStock=? done=?", describe(index.get(other)));
+    }
+
+    @Test
+    public void updateMatchesAFullAggregation() {
+        List<Order> orders = new ArrayList<>();
+        int productId = 0;
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            int[] ids = new int[1 + random.nextInt(4)];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = productId++;
+            }
+            orders.add(order(i, ids));
+        }
+        Data data = data(orders.toArray(new Order[0]));
+        OrderStatusIndex index = data.getStatusIndex();
+
+        Status[] statuses = {new Status(), PAID, IN_STOCK, DONE};
+        for (int i = 0; i < 500; i++) {
+            int id = random.nextInt(productId);
+            Data next = withStatus(data, id, statuses[random.nextInt(statuses.length)]);
+            index = index.update(next, Collections.singleton(id));
+            data = next;
+
+            assertSameStatuses(data, index);
+            // Data keeps its index up to date itself
+            assertSameStatuses(data, data.getStatusIndex());
+        }
+    }
+}